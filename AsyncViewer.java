@@ -0,0 +1,474 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.Rule;
+import com.mysterymaster.puzzle.Verb;
+
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The AsyncViewer class passes the events of the Solver to another Viewer on a separate thread. Usage:<ol>
+ * <li>Instantiate with the Viewer and the capacity, then pass it to the Solver instead of the Viewer.</li>
+ * <li>Call close when the Viewer is no longer needed.</li></ol>
+ * Each event is put in a bounded ring buffer, and the consumer thread gives the events to the Viewer in batches.<br>
+ * When the buffer is full, the solver thread waits for the consumer. If a mark is removed while the events for<br>
+ * entering the mark are still in the buffer, those events and the removal are dropped, since the Viewer would<br>
+ * only undo them. When the Solver says via willPause that it will pause, the solver thread waits until the Viewer has been<br>
+ * given every event, so the Viewer shows the exact state when the pause starts. The Solver also waits when it stops.<br>
+ * The fields of a mark are copied when the event happens, since the Solver reuses the marks on its stack,<br>
+ * and the Viewer is given a detached copy of the mark. The referenced mark of the copy only has its number.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class AsyncViewer extends Base implements IViewer {
+	// <editor-fold defaultstate="collapsed" desc="Event">
+
+	private static final int JOT = 0;
+	private static final int STARTED = 1;
+	private static final int STOPPED = 2;
+	private static final int LEVEL = 3;
+	private static final int SOLUTION = 4;
+	private static final int ADD_MARK = 5;
+	private static final int REMOVE_MARK = 6;
+	private static final int VALID_MARK = 7;
+	private static final int CONTRADICTION = 8;
+	private static final int FACT_VIOLATION = 9;
+	private static final int RULE_VIOLATION = 10;
+	private static final int LAW_VIOLATION = 11;
+	private static final int PLACERS = 12;
+
+	/** Event in the buffer, with the fields of the mark as they were when the event happened. */
+	private static final class Event {
+		int kind;
+		String msg;
+		boolean hasMark;
+		int markNum;
+		String reason;
+		int levelNum;
+		char levelSub;
+		Mark.Type type;
+		int refNum;
+		char refSub;
+		Noun noun1;
+		Verb verb;
+		Noun noun2;
+		List<Fact> facts;
+		int lonerNum;
+		int refMarkNum;
+		boolean valid;
+		Fact fact;
+		Rule rule;
+
+		/**
+		 * Copies the fields of the mark, which may be null.
+		 * @param mark Mark.
+		 */
+		void setMark(final Mark mark) {
+			hasMark = mark != null;
+			if (!hasMark) {
+				markNum = 0;
+				return;
+			}
+			markNum = mark.num;
+			reason = mark.reason;
+			levelNum = mark.levelNum;
+			levelSub = mark.levelSub;
+			type = mark.type;
+			refNum = mark.refNum;
+			refSub = mark.refSub;
+			noun1 = mark.noun1;
+			verb = mark.verb;
+			noun2 = mark.noun2;
+			facts = mark.facts;
+			lonerNum = mark.lonerNum;
+			refMarkNum = (mark.refMark == null) ? -1 : mark.refMark.num;
+			valid = mark.valid;
+		}
+
+		/**
+		 * Copies the event.
+		 * @param src Event.
+		 */
+		void set(final Event src) {
+			kind = src.kind;
+			msg = src.msg;
+			hasMark = src.hasMark;
+			markNum = src.markNum;
+			reason = src.reason;
+			levelNum = src.levelNum;
+			levelSub = src.levelSub;
+			type = src.type;
+			refNum = src.refNum;
+			refSub = src.refSub;
+			noun1 = src.noun1;
+			verb = src.verb;
+			noun2 = src.noun2;
+			facts = src.facts;
+			lonerNum = src.lonerNum;
+			refMarkNum = src.refMarkNum;
+			valid = src.valid;
+			fact = src.fact;
+			rule = src.rule;
+		}
+
+		/**
+		 * Returns a new mark with the copied fields, or null if the event has no mark. Called by the consumer thread.
+		 * @return Mark, or null.
+		 */
+		Mark toMark() {
+			if (!hasMark) return null;
+			Mark refMark = (refMarkNum < 0) ? null : new Mark(refMarkNum);
+			Mark mark = new Mark(markNum);
+			mark.update(reason, levelNum, levelSub, type, refNum, refSub, noun1, verb, noun2, facts, lonerNum, refMark);
+			mark.valid = valid;
+			return mark;
+		}
+
+		void clear() {
+			msg = null;
+			hasMark = false;
+			reason = null;
+			type = null;
+			noun1 = null;
+			verb = null;
+			noun2 = null;
+			facts = null;
+			fact = null;
+			rule = null;
+		}
+	}
+
+	// </editor-fold>
+
+	/** Viewer that is given the events. */
+	private final IViewer viewer;
+
+	/** Thread that will pause after its next event, as told by willPause, or null. */
+	private Thread pauseThread = null;
+
+	/** Ring buffer of events. The events are reused. */
+	private final Event[] ring;
+
+	/** Index of the oldest event in the ring buffer. */
+	private int head = 0;
+
+	/** Number of events in the ring buffer. */
+	private int count = 0;
+
+	/** True while the consumer is giving a batch of events to the Viewer. */
+	private boolean delivering = false;
+
+	/** True once close is called. */
+	private boolean closed = false;
+
+	/** Number of events dropped because they were undone. */
+	private long numCoalesced = 0;
+
+	/** Lock for the ring buffer. */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signaled when an event is put in the buffer. */
+	private final Condition notEmpty = lock.newCondition();
+
+	/** Signaled when the consumer has given a batch to the Viewer. */
+	private final Condition notFull = lock.newCondition();
+
+	/** Consumer thread. */
+	private final Thread consumer;
+
+	@Override
+	public String toString() {
+		return "AsyncViewer";
+	}
+
+	@Override
+	public String asString() {
+		return "capacity=" + ring.length + " numCoalesced=" + numCoalesced;
+	}
+
+	/**
+	 * Constructor with a daemon consumer thread.
+	 * @param viewer Viewer.
+	 * @param capacity Maximum number of events in the buffer.
+	 */
+	public AsyncViewer(final IViewer viewer, final int capacity) {
+		this(viewer, capacity, r -> {
+			Thread thread = new Thread(r);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Constructor.
+	 * @param viewer Viewer.
+	 * @param capacity Maximum number of events in the buffer.
+	 * @param threadFactory Factory that creates the consumer thread.
+	 */
+	public AsyncViewer(final IViewer viewer, final int capacity, final ThreadFactory threadFactory) {
+		this.viewer = viewer;
+		ring = new Event[Math.max(2, capacity)];
+		for (int i = 0; i < ring.length; i++) ring[i] = new Event();
+		consumer = threadFactory.newThread(this::consume);
+		consumer.setName("Viewer");
+		consumer.start();
+	}
+
+	/** Waits until the Viewer has been given every event, then stops the consumer thread. */
+	public void close() {
+		flush();
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/** Waits until the Viewer has been given every event in the buffer. */
+	public void flush() {
+		if (Thread.currentThread() == consumer) return;
+		lock.lock();
+		try {
+			while ((count > 0 || delivering) && !closed) notFull.awaitUninterruptibly();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of events dropped because they were undone.
+	 * @return Number of events.
+	 */
+	public long getNumCoalesced() {
+		lock.lock();
+		try {
+			return numCoalesced;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Puts the event in the buffer, waiting while the buffer is full. Called by the solver thread.<br>
+	 * If the Solver will pause after this event, the Viewer must be given every event first.
+	 * @param wait True to wait for the Viewer even if the Solver will not pause.
+	 */
+	private void put(final int kind, final String msg, final Mark mark, final Fact fact, final Rule rule, final boolean wait) {
+		lock.lock();
+		try {
+			boolean pause = wait;
+			if (kind != JOT && pauseThread == Thread.currentThread()) {
+				pauseThread = null;
+				pause = true;
+			}
+			if (closed) return;
+			if (kind == REMOVE_MARK && !pause && coalesce(mark)) return;
+
+			while (count == ring.length && !closed) notFull.awaitUninterruptibly();
+			Event event = ring[(head + count) % ring.length];
+			event.kind = kind;
+			event.msg = msg;
+			event.setMark(mark);
+			event.fact = fact;
+			event.rule = rule;
+			++count;
+			notEmpty.signal();
+
+			if (pause) {
+				while ((count > 0 || delivering) && !closed) notFull.awaitUninterruptibly();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops the events at the end of the buffer for entering the mark, if the event for entering it is there.<br>
+	 * Called by put when the mark is removed.
+	 * @param mark Mark being removed.
+	 * @return True if the events were dropped, so the removal is dropped as well.
+	 */
+	private boolean coalesce(final Mark mark) {
+		int n = 0;
+		while (n < count) {
+			Event event = ring[(head + count - 1 - n) % ring.length];
+			if (event.markNum != mark.num) return false;
+			++n;
+			if (event.kind == ADD_MARK) break;
+			if (event.kind != VALID_MARK && event.kind != PLACERS) return false;
+			if (n == count) return false;
+		}
+		if (n == 0) return false;
+
+		for (int i = 0; i < n; i++) ring[(head + count - 1 - i) % ring.length].clear();
+		count -= n;
+		numCoalesced += n + 1;
+		return true;
+	}
+
+	/** Gives the events to the Viewer in batches until close is called. Run by the consumer thread. */
+	private void consume() {
+		Event[] batch = new Event[ring.length];
+		for (int i = 0; i < batch.length; i++) batch[i] = new Event();
+
+		while (true) {
+			int n;
+			lock.lock();
+			try {
+				while (count == 0 && !closed) notEmpty.awaitUninterruptibly();
+				if (count == 0) return;
+				n = count;
+				for (int i = 0; i < n; i++) {
+					Event src = ring[(head + i) % ring.length];
+					batch[i].set(src);
+					src.clear();
+				}
+				head = (head + n) % ring.length;
+				count = 0;
+				delivering = true;
+				notFull.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			try {
+				for (int i = 0; i < n; i++) {
+					deliver(batch[i]);
+					batch[i].clear();
+				}
+			}
+			finally {
+				lock.lock();
+				try {
+					delivering = false;
+					notFull.signalAll();
+				}
+				finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives the event to the Viewer. Called by consume.
+	 * @param event Event.
+	 */
+	private void deliver(final Event event) {
+		Mark mark = event.toMark();
+		switch (event.kind) {
+			case JOT: viewer.jot(event.msg); break;
+			case STARTED: viewer.sayStarted(event.msg); break;
+			case STOPPED: viewer.sayStopped(event.msg); break;
+			case LEVEL: viewer.sayLevel(event.msg); break;
+			case SOLUTION: viewer.saySolution(event.msg); break;
+			case ADD_MARK: viewer.sayAddMark(event.msg, mark); break;
+			case REMOVE_MARK: viewer.sayRemoveMark(event.msg, mark); break;
+			case VALID_MARK: viewer.sayValidMark(event.msg, mark); break;
+			case CONTRADICTION: viewer.sayContradiction(event.msg); break;
+			case FACT_VIOLATION: viewer.sayFactViolation(event.msg, mark, event.fact); break;
+			case RULE_VIOLATION: viewer.sayRuleViolation(event.msg, mark, event.rule); break;
+			case LAW_VIOLATION: viewer.sayLawViolation(event.msg, mark); break;
+			case PLACERS: viewer.sayPlacers(event.msg, mark, event.rule); break;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="IViewer">
+
+	@Override
+	public int getInterests() {
+		return viewer.getInterests();
+	}
+
+	@Override
+	public void willPause() {
+		lock.lock();
+		try {
+			pauseThread = Thread.currentThread();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void jot(final String msg) {
+		put(JOT, msg, null, null, null, false);
+	}
+
+	@Override
+	public void sayStarted(final String msg) {
+		put(STARTED, msg, null, null, null, false);
+	}
+
+	@Override
+	public void sayStopped(final String msg) {
+		put(STOPPED, msg, null, null, null, true);
+	}
+
+	@Override
+	public void sayLevel(final String msg) {
+		put(LEVEL, msg, null, null, null, false);
+	}
+
+	@Override
+	public void saySolution(final String msg) {
+		put(SOLUTION, msg, null, null, null, false);
+	}
+
+	@Override
+	public void sayAddMark(final String msg, final Mark mark) {
+		put(ADD_MARK, msg, mark, null, null, false);
+	}
+
+	@Override
+	public void sayRemoveMark(final String msg, final Mark mark) {
+		put(REMOVE_MARK, msg, mark, null, null, false);
+	}
+
+	@Override
+	public void sayValidMark(final String msg, final Mark mark) {
+		put(VALID_MARK, msg, mark, null, null, false);
+	}
+
+	@Override
+	public void sayContradiction(final String msg) {
+		put(CONTRADICTION, msg, null, null, null, false);
+	}
+
+	@Override
+	public void sayFactViolation(final String msg, final Mark mark, final Fact fact) {
+		put(FACT_VIOLATION, msg, mark, fact, null, false);
+	}
+
+	@Override
+	public void sayRuleViolation(final String msg, final Mark mark, final Rule rule) {
+		put(RULE_VIOLATION, msg, mark, null, rule, false);
+	}
+
+	@Override
+	public void sayLawViolation(final String msg, final Mark mark) {
+		put(LAW_VIOLATION, msg, mark, null, null, false);
+	}
+
+	@Override
+	public void sayPlacers(final String msg, final Mark mark, final Rule rule) {
+		put(PLACERS, msg, mark, null, rule, false);
+	}
+
+	// </editor-fold>
+}
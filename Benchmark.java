@@ -0,0 +1,197 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Link;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The Benchmark class times the Solver hot paths so that builds can be compared. Usage:<ol>
+ * <li>Instantiate with the number of warmup and measured iterations.</li>
+ * <li>Call timeSolve for each puzzle in the corpus, and the other time methods for the micro benchmarks.</li>
+ * <li>Call report to format the samples.</li></ol>
+ * Each iteration is timed with System.nanoTime after the warmup iterations have let the JIT compile the code.<br>
+ * The results are summed into a volatile sink so the JIT cannot remove the work.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class Benchmark extends Base {
+	/** Solver object. */
+	private final Solver solver;
+
+	/** Number of warmup iterations, which are not measured. */
+	private final int numWarmups;
+
+	/** Number of measured iterations. */
+	private final int numIterations;
+
+	/** Sink for the results, so the work is not optimized away. */
+	private volatile long sink = 0;
+
+	@Override
+	public String toString() {
+		return "Benchmark";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor.
+	 * @param viewer Viewer, which is only called for jot messages.
+	 * @param spots Spots.
+	 * @param numWarmups Number of warmup iterations.
+	 * @param numIterations Number of measured iterations.
+	 */
+	public Benchmark(final IViewer viewer, final Spots spots, final int numWarmups, final int numIterations) {
+		this.solver = new Solver(viewer, spots);
+		this.numWarmups = numWarmups;
+		this.numIterations = numIterations;
+	}
+
+	/**
+	 * Times the headless solve of the puzzle, end to end.
+	 * @param supplier Supplier of the puzzle. A new instance is used for each iteration.
+	 * @return Array of nanoseconds per solve.
+	 */
+	public long[] timeSolve(final Supplier<Puzzle> supplier) {
+		long[] samples = new long[numIterations];
+		for (int i = -numWarmups; i < numIterations; i++) {
+			Puzzle puzzle = supplier.get();
+			long t1 = System.nanoTime();
+			SolveResult result = solver.solve(puzzle);
+			long t2 = System.nanoTime();
+			sink += result.numMarks;
+			if (i >= 0) samples[i] = t2 - t1;
+		}
+		return samples;
+	}
+
+	/**
+	 * Times entering the first mark of the puzzle via addMark (including the Lawyer), and removing it via restore.
+	 * @param puzzle Puzzle with at least two noun types.
+	 * @return Array of nanoseconds per add and remove.
+	 */
+	public long[] timeAddRemoveMark(final Puzzle puzzle) {
+		solver.beginHeadless(puzzle);
+		Noun noun1 = puzzle.nounTypes.get(0).nouns.get(0);
+		Noun noun2 = puzzle.nounTypes.get(1).nouns.get(0);
+		long[] samples = new long[numIterations];
+		for (int i = -numWarmups; i < numIterations; i++) {
+			int token = solver.checkpoint();
+			long t1 = System.nanoTime();
+			sink += solver.addMark("", 1, ' ', Mark.Type.Level, 1, ' ', noun1, Puzzle.Is, noun2, null, -1, null);
+			solver.restore(token);
+			long t2 = System.nanoTime();
+			solver.quitFlag = false;
+			if (i >= 0) samples[i] = t2 - t1;
+		}
+		solver.endHeadless();
+		return samples;
+	}
+
+	/**
+	 * Times getGridMark and canBeWith over every pair of nouns after the puzzle is solved.
+	 * @param puzzle Puzzle.
+	 * @return Array of nanoseconds per pass over all pairs of nouns.
+	 */
+	public long[] timeGridReads(final Puzzle puzzle) {
+		solver.solve(puzzle);
+		long[] samples = new long[numIterations];
+		for (int i = -numWarmups; i < numIterations; i++) {
+			long n = 0;
+			long t1 = System.nanoTime();
+			for (NounType nounType1 : puzzle.nounTypes) {
+				for (NounType nounType2 : puzzle.nounTypes) {
+					if (nounType1 == nounType2) continue;
+					for (Noun noun1 : nounType1.nouns) {
+						for (Noun noun2 : nounType2.nouns) {
+							if (solver.getGridMark(noun1, noun2) != null) ++n;
+							if (solver.canBeWith(noun1, noun2)) ++n;
+						}
+					}
+				}
+			}
+			long t2 = System.nanoTime();
+			sink += n;
+			if (i >= 0) samples[i] = t2 - t1;
+		}
+		return samples;
+	}
+
+	/**
+	 * Times maybeRelated over every link and every pair of nouns after the first marks are entered.
+	 * @param puzzle Puzzle.
+	 * @return Array of nanoseconds per pass over all links and pairs of nouns.
+	 */
+	public long[] timeMaybeRelated(final Puzzle puzzle) {
+		SolveResult result = solver.solve(puzzle);
+		solver.beginHeadless(null);
+		solver.restore(Math.min(result.numMarks, solver.maxMarks / 2));
+		solver.endHeadless();
+		long[] samples = new long[numIterations];
+		for (int i = -numWarmups; i < numIterations; i++) {
+			long n = 0;
+			long t1 = System.nanoTime();
+			for (Link link : puzzle.links) {
+				for (NounType nounType : puzzle.nounTypes) {
+					if (nounType == link.nounType) continue;
+					for (Noun noun1 : nounType.nouns) {
+						for (Noun noun2 : nounType.nouns) {
+							if (solver.maybeRelated(noun1, link, noun2)) ++n;
+						}
+					}
+				}
+			}
+			long t2 = System.nanoTime();
+			sink += n;
+			if (i >= 0) samples[i] = t2 - t1;
+		}
+		return samples;
+	}
+
+	/**
+	 * Times stats.update by adding and then removing each mark of the solved puzzle.
+	 * @param puzzle Puzzle.
+	 * @return Array of nanoseconds per pass over all marks.
+	 */
+	public long[] timeStatsUpdate(final Puzzle puzzle) {
+		SolveResult result = solver.solve(puzzle);
+		Stats stats = new Stats();
+		long[] samples = new long[numIterations];
+		for (int i = -numWarmups; i < numIterations; i++) {
+			long t1 = System.nanoTime();
+			for (int j = 0; j < result.numMarks; j++) stats.update(solver.marks[j], 1);
+			for (int j = 0; j < result.numMarks; j++) stats.update(solver.marks[j], -1);
+			long t2 = System.nanoTime();
+			sink += stats.levelMarks[0].sum;
+			if (i >= 0) samples[i] = t2 - t1;
+		}
+		return samples;
+	}
+
+	/**
+	 * Returns a one-line summary of the samples.
+	 * @param name Name of the benchmark.
+	 * @param samples Array of nanoseconds.
+	 * @return String with the minimum, median, mean, and 99th percentile in microseconds.
+	 */
+	public static String report(final String name, final long[] samples) {
+		if (samples.length == 0) return name + ": no samples";
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		double sum = 0;
+		for (long sample : sorted) sum += sample;
+		int n = sorted.length;
+		return String.format("%s: n=%d min=%.1f median=%.1f mean=%.1f p99=%.1f us", name, n,
+		 sorted[0] / 1e3, sorted[n / 2] / 1e3, sum / n / 1e3, sorted[Math.min(n - 1, (int) (n * 0.99))] / 1e3);
+	}
+}
@@ -0,0 +1,120 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * The Brancher class solves one puzzle by exploring independent assumptions in parallel on a fork-join pool.<br>
+ * The branches assume the first noun of the first noun type is with each noun of the second noun type.<br>
+ * Each branch has its own Solver and its own copy of the puzzle, since the solver updates the puzzle.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class Brancher extends Base {
+	/** Viewer object, which must be thread-safe since all branches share it. */
+	private final IViewer viewer;
+
+	/** Setup Options object, which all branches share. */
+	private final Spots spots;
+
+	/** Pool that runs the branches. */
+	private final ForkJoinPool pool;
+
+	@Override
+	public String toString() {
+		return "Brancher";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor.
+	 * @param viewer Viewer.
+	 * @param spots Spots.
+	 * @param pool Fork-join pool, or null for the common pool.
+	 */
+	public Brancher(final IViewer viewer, final Spots spots, final ForkJoinPool pool) {
+		this.viewer = viewer;
+		this.spots = spots;
+		this.pool = (pool == null) ? ForkJoinPool.commonPool() : pool;
+	}
+
+	/**
+	 * Solves the puzzle by exploring the branches in parallel.<br>
+	 * If all is false, the first branch to find a solution wins. The branches still queued are cancelled,<br>
+	 * and the running branches are told to quit, including any branch that is just starting.<br>
+	 * If all is true, the solutions of every branch are collected.
+	 * @param supplier Supplier of new instances of the same puzzle. One instance is needed per branch.
+	 * @param all True to collect all solutions, false to stop at the first solution.
+	 * @return Result of the winning branch, or the combined result of all branches.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws ExecutionException If a branch threw an exception.
+	 */
+	public SolveResult solve(final Supplier<Puzzle> supplier, final boolean all) throws InterruptedException, ExecutionException {
+		long time1 = System.nanoTime();
+
+		// Create the puzzle and the solver for each branch.
+		List<Puzzle> puzzles = new ArrayList<>();
+		List<Solver> solvers = new ArrayList<>();
+		AtomicBoolean cancelFlag = new AtomicBoolean(false);
+		Puzzle puzzle0 = supplier.get();
+		int numBranches = (puzzle0.maxNounTypes < 2) ? 1 : puzzle0.maxNouns;
+		for (int i = 0; i < numBranches; i++) {
+			Solver solver = new Solver(viewer, spots);
+			solver.maxSolutions = all ? 0 : 1;
+			solver.cancelFlag = cancelFlag;
+			puzzles.add(i == 0 ? puzzle0 : supplier.get());
+			solvers.add(solver);
+		}
+
+		// Submit the branches.
+		CompletionService<SolveResult> service = new ExecutorCompletionService<>(pool);
+		List<Future<SolveResult>> futures = new ArrayList<>();
+		for (int i = 0; i < numBranches; i++) {
+			final Puzzle puzzle = puzzles.get(i);
+			final Solver solver = solvers.get(i);
+			final int n = i;
+			futures.add(service.submit(() -> {
+				if (cancelFlag.get()) return new SolveResult();
+				if (puzzle.maxNounTypes < 2) return solver.solve(puzzle);
+				NounType nounType1 = puzzle.nounTypes.get(0);
+				NounType nounType2 = puzzle.nounTypes.get(1);
+				return solver.solve(puzzle, nounType1.nouns.get(0), nounType2.nouns.get(n));
+			}));
+		}
+
+		// Collect the results as the branches finish.
+		SolveResult total = new SolveResult();
+		for (int i = 0; i < numBranches; i++) {
+			SolveResult result = service.take().get();
+			if (!all && result.numSolutions > 0) {
+				// Set the flag before the quit, so a branch that resets after the flag is read still sees it.
+				cancelFlag.set(true);
+				for (Future<SolveResult> future : futures) future.cancel(false);
+				for (Solver solver : solvers) solver.doQuit();
+				result.elapsedTime = System.nanoTime() - time1;
+				return result;
+			}
+			total.numSolutions += result.numSolutions;
+			total.numGuesses += result.numGuesses;
+			total.solutions.addAll(result.solutions);
+		}
+		total.elapsedTime = System.nanoTime() - time1;
+		return total;
+	}
+}
@@ -0,0 +1,187 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Puzzle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The Generator class creates random but well-formed puzzles of a given size for benchmarks and tests.<br>
+ * The generator first picks a hidden solution, then derives facts that are true for that solution.<br>
+ * The same seed always gives the same puzzle. The puzzle is created via the IBuilder interface,<br>
+ * since the puzzle classes live in the Puzzle package. Rules are not generated, since they are code.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class Generator extends Base {
+	/** Number of noun types. */
+	public final int maxNounTypes;
+
+	/** Number of nouns per noun type. */
+	public final int maxNouns;
+
+	/** Difficulty from 0 (many facts, many of them positive) to 1 (few facts, all negative). */
+	public final double difficulty;
+
+	/** Seed for the random number generator. */
+	public final long seed;
+
+	/** Hidden solution, where solution[t - 1][n - 1] is the number of the noun of type t with noun n of the first type. */
+	private int[][] solution = null;
+
+	/** Facts in the order they will be added, where each fact is { t1, n1, isPositive, isLink, t2, n2 }. */
+	private List<int[]> clues = null;
+
+	@Override
+	public String toString() {
+		return "Generator";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor.
+	 * @param maxNounTypes Number of noun types, at least two.
+	 * @param maxNouns Number of nouns per noun type, at least two.
+	 * @param difficulty Difficulty from 0 to 1.
+	 * @param seed Seed.
+	 */
+	public Generator(final int maxNounTypes, final int maxNouns, final double difficulty, final long seed) {
+		this.maxNounTypes = maxNounTypes;
+		this.maxNouns = maxNouns;
+		this.difficulty = Math.max(0, Math.min(1, difficulty));
+		this.seed = seed;
+	}
+
+	/** Picks the hidden solution and the facts. Called by build, buildUnique. */
+	private void init() {
+		if (clues != null) return;
+		Random random = new Random(seed);
+
+		// Pick a random permutation for each noun type after the first.
+		solution = new int[maxNounTypes][maxNouns];
+		for (int t = 0; t < maxNounTypes; t++) {
+			List<Integer> nums = new ArrayList<>();
+			for (int n = 1; n <= maxNouns; n++) nums.add(n);
+			if (t > 0) Collections.shuffle(nums, random);
+			for (int n = 0; n < maxNouns; n++) solution[t][n] = nums.get(n);
+		}
+
+		// List every true fact, then shuffle them. The slot of a noun is the noun of the first type it is with.
+		List<int[]> positives = new ArrayList<>();
+		List<int[]> negatives = new ArrayList<>();
+		for (int t1 = 1; t1 <= maxNounTypes; t1++) {
+			for (int t2 = t1 + 1; t2 <= maxNounTypes; t2++) {
+				for (int n1 = 1; n1 <= maxNouns; n1++) {
+					for (int n2 = 1; n2 <= maxNouns; n2++) {
+						int slot1 = getSlot(t1, n1);
+						int slot2 = getSlot(t2, n2);
+						int isWith = (slot1 == slot2) ? 1 : 0;
+						(isWith == 1 ? positives : negatives).add(new int[] { t1, n1, isWith, 0, t2, n2 });
+						if (t1 > 1 && slot1 != slot2) {
+							int isNext = (Math.abs(slot1 - slot2) == 1) ? 1 : 0;
+							(isNext == 1 ? positives : negatives).add(new int[] { t1, n1, isNext, 1, t2, n2 });
+						}
+					}
+				}
+			}
+		}
+		Collections.shuffle(positives, random);
+		Collections.shuffle(negatives, random);
+
+		// Harder puzzles have fewer facts, and fewer of them are positive.
+		int maxPairs = maxNounTypes * (maxNounTypes - 1) / 2 * maxNouns;
+		int numPositives = (int) Math.round(maxPairs * (1 - difficulty) / 2);
+		clues = new ArrayList<>();
+		clues.addAll(positives.subList(0, Math.min(numPositives, positives.size())));
+		clues.addAll(negatives);
+		clues.addAll(positives.subList(Math.min(numPositives, positives.size()), positives.size()));
+	}
+
+	/**
+	 * Returns the slot of the noun, which is the number of the noun of the first type it is with.
+	 * @param t One-based number of the noun type.
+	 * @param n One-based number of the noun.
+	 * @return One-based number of the slot.
+	 */
+	private int getSlot(final int t, final int n) {
+		for (int i = 0; i < maxNouns; i++) {
+			if (solution[t - 1][i] == n) return i + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the default number of facts, which is lower for harder puzzles.
+	 * @return Number of facts.
+	 */
+	public int getNumFacts() {
+		init();
+		int maxPairs = maxNounTypes * (maxNounTypes - 1) / 2 * maxNouns;
+		return Math.min(clues.size(), (int) Math.round(maxPairs * (3 - 2 * difficulty)));
+	}
+
+	/**
+	 * Builds the puzzle with the given number of facts.
+	 * @param builder Builder.
+	 * @param numFacts Number of facts.
+	 * @return Puzzle.
+	 */
+	public Puzzle build(final IBuilder builder, final int numFacts) {
+		init();
+		char[] letters = new char[maxNounTypes];
+		builder.begin("Generated " + maxNounTypes + "x" + maxNouns + " #" + seed);
+		for (int t = 1; t <= maxNounTypes; t++) {
+			letters[t - 1] = (char) ('A' + (t - 1) % 26);
+			builder.addNounType("Type " + letters[t - 1]);
+			for (int n = 1; n <= maxNouns; n++) builder.addNoun("" + letters[t - 1] + n);
+		}
+		builder.addLink("next to");
+
+		int n = Math.min(numFacts, clues.size());
+		for (int i = 0; i < n; i++) {
+			int[] clue = clues.get(i);
+			String name = "" + letters[clue[0] - 1] + clue[1] + (clue[2] == 1 ? " is " : " is not ") +
+			 (clue[3] == 1 ? "next to " : "with ") + letters[clue[4] - 1] + clue[5] + ".";
+			builder.addFact(name, clue[0], clue[1], clue[2] == 1, clue[3] == 1, clue[4], clue[5]);
+		}
+		return builder.getPuzzle();
+	}
+
+	/**
+	 * Builds the puzzle with the default number of facts, adding more facts until the solution is unique.<br>
+	 * Uniqueness is checked via solver.enumerate with a limit of two.
+	 * @param builders Supplier of new builders, since a puzzle is built for each check.
+	 * @param solver Solver.
+	 * @return Puzzle with a unique solution.
+	 */
+	public Puzzle buildUnique(final Supplier<IBuilder> builders, final Solver solver) {
+		init();
+		int numFacts = getNumFacts();
+		int step = Math.max(1, maxNouns);
+		while (true) {
+			Puzzle puzzle = build(builders.get(), numFacts);
+			if (numFacts >= clues.size() || solver.enumerate(puzzle, 2).numSolutions == 1) return puzzle;
+			numFacts += step;
+		}
+	}
+
+	/**
+	 * Returns a supplier of new instances of the puzzle with the default number of facts.<br>
+	 * This is what the Benchmark and the Brancher need.
+	 * @param builders Supplier of new builders.
+	 * @return Supplier of puzzles.
+	 */
+	public Supplier<Puzzle> getSupplier(final Supplier<IBuilder> builders) {
+		final int numFacts = getNumFacts();
+		return () -> build(builders.get(), numFacts);
+	}
+}
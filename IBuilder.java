@@ -0,0 +1,54 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Puzzle;
+
+/**
+ * The IBuilder interface is implemented by a class that can create a puzzle, and is called by the Generator class.<br>
+ * Note: The noun types, nouns, and facts are numbered in the order they are added, starting at one.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public interface IBuilder {
+	/**
+	 * Starts a new puzzle.
+	 * @param name Name of the puzzle.
+	 */
+	void begin(String name);
+
+	/**
+	 * Adds a noun type to the puzzle.
+	 * @param name Name of the noun type.
+	 */
+	void addNounType(String name);
+
+	/**
+	 * Adds a noun to the last noun type.
+	 * @param name Name of the noun.
+	 */
+	void addNoun(String name);
+
+	/**
+	 * Adds the "next to" link, where two nouns of the first noun type are related if their numbers differ by one.
+	 * @param name Name of the link.
+	 */
+	void addLink(String name);
+
+	/**
+	 * Adds a fact stating that noun 1 is or is not with noun 2, or is or is not related to noun 2 via the link.
+	 * @param name Name of the fact.
+	 * @param t1 One-based number of noun 1's type.
+	 * @param n1 One-based number of noun 1.
+	 * @param isPositive True for "is", false for "is not".
+	 * @param isLink True if the fact uses the link, false if the fact is "with".
+	 * @param t2 One-based number of noun 2's type.
+	 * @param n2 One-based number of noun 2.
+	 */
+	void addFact(String name, int t1, int n1, boolean isPositive, boolean isLink, int t2, int n2);
+
+	/**
+	 * Returns the puzzle that was built.
+	 * @return Puzzle.
+	 */
+	Puzzle getPuzzle();
+}
@@ -0,0 +1,112 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Rule;
+
+/**
+ * The IMetrics interface is implemented by a metrics listener and called by the Solver class.<br>
+ * Unlike the IViewer, it is also called when solving headless. The default is NONE, which does nothing,<br>
+ * so the JIT can remove the calls when no listener is set.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public interface IMetrics {
+	/** Listener that does nothing. */
+	IMetrics NONE = new IMetrics() {
+		@Override public boolean isTimed() { return false; }
+		@Override public void markAdded(Mark mark) { }
+		@Override public void markRemoved(Mark mark) { }
+		@Override public void markValidated(Mark mark, long nanos) { }
+		@Override public void agendaDone(int numMarks) { }
+		@Override public void contradiction(Mark oldMark) { }
+		@Override public void factViolation(Mark mark, Fact fact) { }
+		@Override public void ruleViolation(Mark mark, Rule rule) { }
+		@Override public void lawViolation(Mark mark) { }
+		@Override public void solution(int numSolutions) { }
+		@Override public void lawDone(Mark mark, int lawNum, long nanos, int newMarks) { }
+		@Override public void ruleDone(Mark mark, Rule rule, long nanos) { }
+	};
+
+	/**
+	 * Returns true if the Solver should measure the time the Lawyer spends on each mark, and on each law and rule.
+	 * @return True to pass the time to markValidated and to call lawDone and ruleDone, otherwise zero is passed.
+	 */
+	boolean isTimed();
+
+	/**
+	 * 1. Called when a mark is entered. The mark gives its level, type (level, rule, law), and whether it is a guess.
+	 * @param mark Mark.
+	 */
+	void markAdded(Mark mark);
+
+	/**
+	 * 2. Called when a mark is removed.
+	 * @param mark Mark.
+	 */
+	void markRemoved(Mark mark);
+
+	/**
+	 * 3. Called when the Lawyer has validated a mark. Not called for a mark that caused a violation.
+	 * @param mark Mark.
+	 * @param nanos Time in nanoseconds spent by the Lawyer on the mark, or zero if not timed.
+	 */
+	void markValidated(Mark mark, long nanos);
+
+	/**
+	 * 4. Called when the agenda is empty.
+	 * @param numMarks Number of marks the Lawyer worked through, which is the depth of the propagation.
+	 */
+	void agendaDone(int numMarks);
+
+	/**
+	 * 5. Called when a potential mark contradicts an existing mark. Not called for a mark entered by a rule,<br>
+	 * since a rule may override the contradiction, and so the Viewer is not told about it either.
+	 * @param oldMark Existing mark.
+	 */
+	void contradiction(Mark oldMark);
+
+	/**
+	 * 6. Called when a mark violates a fact.
+	 * @param mark Mark.
+	 * @param fact Fact.
+	 */
+	void factViolation(Mark mark, Fact fact);
+
+	/**
+	 * 7. Called when a mark violates a rule.
+	 * @param mark Mark.
+	 * @param rule Rule.
+	 */
+	void ruleViolation(Mark mark, Rule rule);
+
+	/**
+	 * 8. Called when a mark violates a law.
+	 * @param mark Mark.
+	 */
+	void lawViolation(Mark mark);
+
+	/**
+	 * 9. Called when a solution is found.
+	 * @param numSolutions Number of solutions so far.
+	 */
+	void solution(int numSolutions);
+
+	/**
+	 * 10. Called when the Lawyer has run a law on a mark, if the Lawyer is timed.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param lawNum One-based law number.
+	 * @param nanos Time in nanoseconds spent running the law.
+	 * @param newMarks Number of marks the law entered.
+	 */
+	void lawDone(Mark mark, int lawNum, long nanos, int newMarks);
+
+	/**
+	 * 11. Called when the Lawyer has run a rule on a mark, if the Lawyer is timed.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param rule Rule.
+	 * @param nanos Time in nanoseconds spent running the rule.
+	 */
+	void ruleDone(Mark mark, Rule rule, long nanos);
+}
@@ -11,6 +11,60 @@ import com.mysterymaster.puzzle.Rule;
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public interface IViewer {
+	// <editor-fold defaultstate="collapsed" desc="Interests">
+
+	/** Interest in sayLevel. */
+	int SAY_LEVEL = 1 << 3;
+
+	/** Interest in saySolution. */
+	int SAY_SOLUTION = 1 << 4;
+
+	/** Interest in sayAddMark. */
+	int SAY_ADD_MARK = 1 << 5;
+
+	/** Interest in sayRemoveMark. */
+	int SAY_REMOVE_MARK = 1 << 6;
+
+	/** Interest in sayValidMark. */
+	int SAY_VALID_MARK = 1 << 7;
+
+	/** Interest in sayContradiction. */
+	int SAY_CONTRADICTION = 1 << 8;
+
+	/** Interest in sayFactViolation. */
+	int SAY_FACT_VIOLATION = 1 << 9;
+
+	/** Interest in sayRuleViolation. */
+	int SAY_RULE_VIOLATION = 1 << 10;
+
+	/** Interest in sayLawViolation. */
+	int SAY_LAW_VIOLATION = 1 << 11;
+
+	/** Interest in sayPlacers. */
+	int SAY_PLACERS = 1 << 12;
+
+	/** Interest in the messages. Without it, the Solver does not build the messages, and passes null instead. */
+	int SAY_MESSAGES = 1 << 13;
+
+	/** Interest in every event and its message. */
+	int SAY_ALL = SAY_LEVEL | SAY_SOLUTION | SAY_ADD_MARK | SAY_REMOVE_MARK | SAY_VALID_MARK | SAY_CONTRADICTION
+		| SAY_FACT_VIOLATION | SAY_RULE_VIOLATION | SAY_LAW_VIOLATION | SAY_PLACERS | SAY_MESSAGES;
+
+	/** Interest in the solutions and the violations, without the messages. */
+	int SAY_RESULTS = SAY_SOLUTION | SAY_CONTRADICTION | SAY_FACT_VIOLATION | SAY_RULE_VIOLATION | SAY_LAW_VIOLATION;
+
+	/**
+	 * Returns the events the Viewer wants, as the sum of the SAY constants. Read once by the Solver constructor.<br>
+	 * The Solver skips an event the Viewer does not want, unless the Spots say to pause on it.<br>
+	 * Note: The methods jot, sayStarted, and sayStopped are always called, and always with their messages.
+	 * @return Interests.
+	 */
+	default int getInterests() {
+		return SAY_ALL;
+	}
+
+	// </editor-fold>
+
 	/**
 	 * Displays a debug message, which may output to the IDE.
 	 * @param msg Message.
@@ -98,4 +152,12 @@ public interface IViewer {
 	 * @param rule Rule.
 	 */
 	void sayPlacers(String msg, Mark mark, Rule rule);
+
+	/**
+	 * 13. Called on the thread just before the event after which it will pause. Called whatever the interests.<br>
+	 * This is the decision of the Solver, so a Viewer that must know about a pause should not ask the Spots again.<br>
+	 * The default does nothing.
+	 */
+	default void willPause() {
+	}
 }
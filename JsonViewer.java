@@ -0,0 +1,397 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.Rule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The JsonViewer class writes the events of the Solver as newline-delimited JSON (NDJSON), one object per line.<br>
+ * Each object has the event name, and may have the message, the mark, the fact number, and the rule number, for example:<br>
+ * {"event":"addMark","msg":"...","mark":{"num":7,"noun1":{"type":1,"num":2,"name":"Abe"},"verb":-1,<br>
+ * "noun2":{"type":2,"num":3,"name":"red"},"type":"Rule","level":0,"levelSub":" ","refNum":2,"refSub":" "}}<br>
+ * Each line is built in a byte buffer that is reused, and written to the stream or channel in one call.<br>
+ * Unless the messages are wanted, the Viewer declares so in its interests, and the Solver does not build them.<br>
+ * The stream is flushed when the Solver stops, or when flush is called, and not for each line, so the caller should<br>
+ * pass a BufferedOutputStream. Otherwise each line costs a write to the operating system.<br>
+ * Note: With the default Spots, okPauseSolution is set, so a headless Solver given this Viewer waits at the first<br>
+ * solution until solver.doResume is called. Clear the spot to run the solve to the end.<br>
+ * The first IOException stops the output, and is returned by getError.<br>
+ * Note: The methods are synchronized, so the Viewer may be shared by the workers of a SolverPool.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class JsonViewer extends Base implements IViewer {
+	/** Output stream, or null if the output is a channel. */
+	private final OutputStream out;
+
+	/** Output channel, or null if the output is a stream. */
+	private final WritableByteChannel channel;
+
+	/** Events written, as the sum of the IViewer.SAY constants. */
+	private final int interests;
+
+	/** True to write the message of each event. */
+	private final boolean okMessages;
+
+	/** Buffer for the current line. Grows as needed. */
+	private byte[] buf = new byte[512];
+
+	/** Byte buffer that wraps buf for the channel. Wrapped again only when buf grows. */
+	private ByteBuffer bb = ByteBuffer.wrap(buf);
+
+	/** Number of bytes in the buffer. */
+	private int pos = 0;
+
+	/** First exception thrown while writing, or null. */
+	private IOException error = null;
+
+	@Override
+	public String toString() {
+		return "JsonViewer";
+	}
+
+	@Override
+	public String asString() {
+		return "interests=" + interests + " okMessages=" + okMessages + " error=" + error;
+	}
+
+	/**
+	 * Constructor for a stream.
+	 * @param out Output stream.
+	 * @param interests Events to write, as the sum of the IViewer.SAY constants.
+	 * @param okMessages True to write the message of each event.
+	 */
+	public JsonViewer(final OutputStream out, final int interests, final boolean okMessages) {
+		this.out = out;
+		this.channel = null;
+		this.interests = okMessages ? interests | SAY_MESSAGES : interests & ~SAY_MESSAGES;
+		this.okMessages = okMessages;
+	}
+
+	/**
+	 * Constructor for a channel.
+	 * @param channel Output channel.
+	 * @param interests Events to write, as the sum of the IViewer.SAY constants.
+	 * @param okMessages True to write the message of each event.
+	 */
+	public JsonViewer(final WritableByteChannel channel, final int interests, final boolean okMessages) {
+		this.out = null;
+		this.channel = channel;
+		this.interests = okMessages ? interests | SAY_MESSAGES : interests & ~SAY_MESSAGES;
+		this.okMessages = okMessages;
+	}
+
+	/**
+	 * Returns the first exception thrown while writing, or null if there was none.
+	 * @return Exception, or null.
+	 */
+	public synchronized IOException getError() {
+		return error;
+	}
+
+	/** Flushes the stream. Called when the Solver stops, or by the caller at the end of a batch of events. */
+	public synchronized void flush() {
+		if (error != null || out == null) return;
+		try {
+			out.flush();
+		}
+		catch (IOException e) {
+			error = e;
+		}
+	}
+
+	// <editor-fold defaultstate="collapsed" desc="Output">
+
+	/**
+	 * Makes room for n more bytes in the buffer.
+	 * @param n Number of bytes.
+	 */
+	private void ensure(final int n) {
+		if (pos + n <= buf.length) return;
+		byte[] bigger = new byte[Math.max(buf.length * 2, pos + n)];
+		System.arraycopy(buf, 0, bigger, 0, pos);
+		buf = bigger;
+		bb = ByteBuffer.wrap(buf);
+	}
+
+	/**
+	 * Appends the ASCII text, which must not need escaping.
+	 * @param text Text.
+	 */
+	private void raw(final String text) {
+		int n = text.length();
+		ensure(n);
+		for (int i = 0; i < n; i++) buf[pos++] = (byte) text.charAt(i);
+	}
+
+	/**
+	 * Appends the integer in decimal.
+	 * @param val Integer.
+	 */
+	private void number(final int val) {
+		ensure(11);
+		long v = val;
+		if (v < 0) {
+			buf[pos++] = '-';
+			v = -v;
+		}
+		int start = pos;
+		do {
+			buf[pos++] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v != 0);
+		for (int i = start, j = pos - 1; i < j; i++, j--) {
+			byte b = buf[i];
+			buf[i] = buf[j];
+			buf[j] = b;
+		}
+	}
+
+	/**
+	 * Appends the character as a JSON string encoded in UTF-8.
+	 * @param c Character.
+	 */
+	private void string(final char c) {
+		ensure(2);
+		buf[pos++] = '"';
+		escape(c);
+		ensure(1);
+		buf[pos++] = '"';
+	}
+
+	/**
+	 * Appends the text as a JSON string encoded in UTF-8, or null.
+	 * @param text Text, or null.
+	 */
+	private void string(final String text) {
+		if (text == null) {
+			raw("null");
+			return;
+		}
+		ensure(1);
+		buf[pos++] = '"';
+		int n = text.length();
+		for (int i = 0; i < n; i++) {
+			char c = text.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, text.charAt(++i));
+				ensure(4);
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else {
+				escape(c);
+			}
+		}
+		ensure(1);
+		buf[pos++] = '"';
+	}
+
+	/**
+	 * Appends the character escaped for a JSON string and encoded in UTF-8. A lone surrogate is written in hexadecimal.
+	 * @param c Character.
+	 */
+	private void escape(final char c) {
+		ensure(6);
+		switch (c) {
+			case '"': buf[pos++] = '\\'; buf[pos++] = '"'; return;
+			case '\\': buf[pos++] = '\\'; buf[pos++] = '\\'; return;
+			case '\n': buf[pos++] = '\\'; buf[pos++] = 'n'; return;
+			case '\r': buf[pos++] = '\\'; buf[pos++] = 'r'; return;
+			case '\t': buf[pos++] = '\\'; buf[pos++] = 't'; return;
+		}
+		if (c < 0x20 || Character.isSurrogate(c)) {
+			final String hex = "0123456789abcdef";
+			buf[pos++] = '\\';
+			buf[pos++] = 'u';
+			buf[pos++] = (byte) hex.charAt((c >> 12) & 0xF);
+			buf[pos++] = (byte) hex.charAt((c >> 8) & 0xF);
+			buf[pos++] = (byte) hex.charAt((c >> 4) & 0xF);
+			buf[pos++] = (byte) hex.charAt(c & 0xF);
+		}
+		else if (c < 0x80) {
+			buf[pos++] = (byte) c;
+		}
+		else if (c < 0x800) {
+			buf[pos++] = (byte) (0xC0 | (c >> 6));
+			buf[pos++] = (byte) (0x80 | (c & 0x3F));
+		}
+		else {
+			buf[pos++] = (byte) (0xE0 | (c >> 12));
+			buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buf[pos++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * Appends the noun as an object.
+	 * @param noun Noun.
+	 */
+	private void noun(final Noun noun) {
+		raw("{\"type\":");
+		number(noun.type.num);
+		raw(",\"num\":");
+		number(noun.num);
+		raw(",\"name\":");
+		string(noun.name);
+		raw("}");
+	}
+
+	/**
+	 * Appends the mark as an object.
+	 * @param mark Mark.
+	 */
+	private void mark(final Mark mark) {
+		raw("{\"num\":");
+		number(mark.num);
+		raw(",\"noun1\":");
+		noun(mark.noun1);
+		raw(",\"verb\":");
+		number(mark.verb.num);
+		raw(",\"noun2\":");
+		noun(mark.noun2);
+		raw(",\"type\":");
+		string(mark.type.name);
+		raw(",\"level\":");
+		number(mark.levelNum);
+		raw(",\"levelSub\":");
+		string(mark.levelSub);
+		raw(",\"refNum\":");
+		number(mark.refNum);
+		raw(",\"refSub\":");
+		string(mark.refSub);
+		raw("}");
+	}
+
+	/**
+	 * Writes the event as one line.
+	 * @param event Event name.
+	 * @param msg Message, or null.
+	 * @param mark Mark, or null.
+	 * @param fact Fact, or null.
+	 * @param rule Rule, or null.
+	 */
+	private synchronized void write(final String event, final String msg, final Mark mark, final Fact fact, final Rule rule) {
+		if (error != null) return;
+		pos = 0;
+		raw("{\"event\":\"");
+		raw(event);
+		raw("\"");
+		if (okMessages && msg != null) {
+			raw(",\"msg\":");
+			string(msg);
+		}
+		if (mark != null) {
+			raw(",\"mark\":");
+			mark(mark);
+		}
+		if (fact != null) {
+			raw(",\"fact\":");
+			number(fact.num);
+		}
+		if (rule != null) {
+			raw(",\"rule\":");
+			number(rule.num);
+		}
+		raw("}\n");
+
+		try {
+			if (out != null) {
+				out.write(buf, 0, pos);
+			}
+			else {
+				bb.clear().limit(pos);
+				while (bb.hasRemaining()) channel.write(bb);
+			}
+		}
+		catch (IOException e) {
+			error = e;
+		}
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="IViewer">
+
+	@Override
+	public int getInterests() {
+		return interests;
+	}
+
+	@Override
+	public void jot(final String msg) {
+	}
+
+	@Override
+	public void sayStarted(final String msg) {
+		write("started", msg, null, null, null);
+	}
+
+	@Override
+	public void sayStopped(final String msg) {
+		write("stopped", msg, null, null, null);
+		flush();
+	}
+
+	@Override
+	public void sayLevel(final String msg) {
+		if ((interests & SAY_LEVEL) != 0) write("level", msg, null, null, null);
+	}
+
+	@Override
+	public void saySolution(final String msg) {
+		if ((interests & SAY_SOLUTION) != 0) write("solution", msg, null, null, null);
+	}
+
+	@Override
+	public void sayAddMark(final String msg, final Mark mark) {
+		if ((interests & SAY_ADD_MARK) != 0) write("addMark", msg, mark, null, null);
+	}
+
+	@Override
+	public void sayRemoveMark(final String msg, final Mark mark) {
+		if ((interests & SAY_REMOVE_MARK) != 0) write("removeMark", msg, mark, null, null);
+	}
+
+	@Override
+	public void sayValidMark(final String msg, final Mark mark) {
+		if ((interests & SAY_VALID_MARK) != 0) write("validMark", msg, mark, null, null);
+	}
+
+	@Override
+	public void sayContradiction(final String msg) {
+		if ((interests & SAY_CONTRADICTION) != 0) write("contradiction", msg, null, null, null);
+	}
+
+	@Override
+	public void sayFactViolation(final String msg, final Mark mark, final Fact fact) {
+		if ((interests & SAY_FACT_VIOLATION) != 0) write("factViolation", msg, mark, fact, null);
+	}
+
+	@Override
+	public void sayRuleViolation(final String msg, final Mark mark, final Rule rule) {
+		if ((interests & SAY_RULE_VIOLATION) != 0) write("ruleViolation", msg, mark, null, rule);
+	}
+
+	@Override
+	public void sayLawViolation(final String msg, final Mark mark) {
+		if ((interests & SAY_LAW_VIOLATION) != 0) write("lawViolation", msg, mark, null, null);
+	}
+
+	@Override
+	public void sayPlacers(final String msg, final Mark mark, final Rule rule) {
+		if ((interests & SAY_PLACERS) != 0) write("placers", msg, mark, null, rule);
+	}
+
+	// </editor-fold>
+}
@@ -6,6 +6,8 @@ import com.mysterymaster.puzzle.ISolver;
 /**
  * The Level Counter class tracks the number of marks entered for each level.<br>
  * A mark is entered by either a level method (fact or guess), triggered by a rule, or by a law.<br>
+ * When timing is on, it also tracks in the same columns the time the Lawyer spent running each rule and law,<br>
+ * and separately the validation time, which is the time the Lawyer spent on the marks entered by each.<br>
  * Copyright (c) 2018 mysterymaster.com. All rights reserved.
  * @version 2018-05-15
  * @author Michael Benson <michael.benson@mysterymaster.com>
@@ -26,6 +28,18 @@ public class LevelCounter extends Base {
 	/** Total number of marks. */
 	int sum;
 
+	/** Time in nanoseconds the Lawyer spent running the rules and laws in each column. See getColHeaders. */
+	final long[] nanos;
+
+	/** Number of times the Lawyer ran the rules and laws in each column. See getColHeaders. */
+	final int[] calls;
+
+	/** Validation time in nanoseconds the Lawyer spent on the marks in each column. See getColHeaders. */
+	final long[] validNanos;
+
+	/** Number of marks the Lawyer validated in each column. See getColHeaders. */
+	final int[] validCalls;
+
 	@Override
 	public String toString() {
 		return "LevelCounter";
@@ -39,6 +53,10 @@ public class LevelCounter extends Base {
 	/** Constructor. */
 	LevelCounter() {
 		marksByLaw = new int[ISolver.MAX_LAWS];
+		nanos = new long[MAX_COLS];
+		calls = new int[MAX_COLS];
+		validNanos = new long[MAX_COLS];
+		validCalls = new int[MAX_COLS];
 		reset();
 	}
 
@@ -48,6 +66,31 @@ public class LevelCounter extends Base {
 		marksByRule = 0;
 		for (int j = 0; j < ISolver.MAX_LAWS; j++) marksByLaw[j] = 0;
 		sum = 0;
+		for (int j = 0; j < MAX_COLS; j++) { nanos[j] = 0; calls[j] = 0; validNanos[j] = 0; validCalls[j] = 0; }
+	}
+
+	/**
+	 * Adds the time the Lawyer spent running a rule or law to the given column and to the sum.
+	 * @param col Zero-based column: 1 for rule, 2 to MAX_LAWS + 1 for the laws.
+	 * @param t Time in nanoseconds.
+	 */
+	void addTime(final int col, final long t) {
+		nanos[col] += t;
+		++calls[col];
+		nanos[MAX_COLS - 1] += t;
+		++calls[MAX_COLS - 1];
+	}
+
+	/**
+	 * Adds the time the Lawyer spent validating a mark to the given column and to the sum.
+	 * @param col Zero-based column: 0 for level, 1 for rule, 2 to MAX_LAWS + 1 for the laws.
+	 * @param t Time in nanoseconds.
+	 */
+	void addValidationTime(final int col, final long t) {
+		validNanos[col] += t;
+		++validCalls[col];
+		validNanos[MAX_COLS - 1] += t;
+		++validCalls[MAX_COLS - 1];
 	}
 
 	/**
@@ -105,4 +148,36 @@ public class LevelCounter extends Base {
 		counts[i++] = sum;
 		return counts;
 	}
+
+	/**
+	 * Returns the times in nanoseconds the Lawyer spent running the rules and laws, in the same columns as getCounts.
+	 * @return Array of times.
+	 */
+	public long[] getTimes() {
+		return nanos.clone();
+	}
+
+	/**
+	 * Returns the number of times the Lawyer ran the rules and laws, in the same columns as getCounts.
+	 * @return Array of counts.
+	 */
+	public int[] getCalls() {
+		return calls.clone();
+	}
+
+	/**
+	 * Returns the validation times in nanoseconds as an array, in the same columns as getCounts.
+	 * @return Array of times.
+	 */
+	public long[] getValidationTimes() {
+		return validNanos.clone();
+	}
+
+	/**
+	 * Returns the number of marks the Lawyer validated as an array, in the same columns as getCounts.
+	 * @return Array of counts.
+	 */
+	public int[] getValidationCalls() {
+		return validCalls.clone();
+	}
 }
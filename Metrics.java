@@ -0,0 +1,213 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.ISolver;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Rule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Metrics class is an IMetrics listener that keeps counters and histograms. It is thread-safe,<br>
+ * so one instance may be shared by the solvers of a SolverPool and read by a monitoring thread.<br>
+ * The time per level, law, and rule is the time the Lawyer spent running the laws and rules, as reported via lawDone<br>
+ * and ruleDone. The validation time is the time the Lawyer spent on each mark, as reported via markValidated.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class Metrics extends Base implements IMetrics {
+	/** Number of marks entered for each level. */
+	public final LongAdder[] marksByLevel = newAdders(ISolver.MAX_LEVELS);
+
+	/** Number of marks entered by each law. */
+	public final LongAdder[] marksByLaw = newAdders(ISolver.MAX_LAWS);
+
+	/** Number of marks entered by each rule, given the rule number. */
+	public final Map<Integer, LongAdder> marksByRule = new ConcurrentHashMap<>();
+
+	/** Time in nanoseconds spent by the Lawyer running the laws and rules on the marks of each level. */
+	public final LongAdder[] nanosByLevel = newAdders(ISolver.MAX_LEVELS);
+
+	/** Time in nanoseconds spent by the Lawyer running each law. */
+	public final LongAdder[] nanosByLaw = newAdders(ISolver.MAX_LAWS);
+
+	/** Time in nanoseconds spent by the Lawyer running each rule, given the rule number. */
+	public final Map<Integer, LongAdder> nanosByRule = new ConcurrentHashMap<>();
+
+	/** Number of marks removed. */
+	public final LongAdder marksRemoved = new LongAdder();
+
+	/** Number of marks removed for each level. */
+	public final LongAdder[] removedByLevel = newAdders(ISolver.MAX_LEVELS);
+
+	/** Number of marks removed that were entered by each law. */
+	public final LongAdder[] removedByLaw = newAdders(ISolver.MAX_LAWS);
+
+	/** Number of marks removed that were entered by each rule, given the rule number. */
+	public final Map<Integer, LongAdder> removedByRule = new ConcurrentHashMap<>();
+
+	/** Number of assumptions. */
+	public final LongAdder guesses = new LongAdder();
+
+	/** Number of contradictions. */
+	public final LongAdder contradictions = new LongAdder();
+
+	/** Number of fact violations. */
+	public final LongAdder factViolations = new LongAdder();
+
+	/** Number of rule violations. */
+	public final LongAdder ruleViolations = new LongAdder();
+
+	/** Number of law violations. */
+	public final LongAdder lawViolations = new LongAdder();
+
+	/** Number of solutions. */
+	public final LongAdder solutions = new LongAdder();
+
+	/** Histogram of the validation time in nanoseconds spent by the Lawyer on each mark. */
+	public final Histogram validateNanos = new Histogram();
+
+	/** Histogram of the number of marks worked through each time the agenda is emptied. */
+	public final Histogram agendaDepths = new Histogram();
+
+	/** True if the Lawyer is timed. */
+	private final boolean timed;
+
+	@Override
+	public String toString() {
+		return "Metrics";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor.
+	 * @param timed True to time the Lawyer, which costs two calls to System.nanoTime per mark, law, and rule.
+	 */
+	public Metrics(final boolean timed) {
+		this.timed = timed;
+	}
+
+	/**
+	 * Returns an array of new adders.
+	 * @param n Number of adders.
+	 * @return Array of adders.
+	 */
+	private static LongAdder[] newAdders(final int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++) adders[i] = new LongAdder();
+		return adders;
+	}
+
+	@Override
+	public boolean isTimed() {
+		return timed;
+	}
+
+	@Override
+	public void markAdded(final Mark mark) {
+		if (mark.levelNum >= 1) marksByLevel[mark.levelNum - 1].increment();
+		if (mark.type == Mark.Type.Law) marksByLaw[mark.refNum - 1].increment();
+		else if (mark.type == Mark.Type.Rule) marksByRule.computeIfAbsent(mark.refNum, k -> new LongAdder()).increment();
+		if (mark.guess) guesses.increment();
+	}
+
+	@Override
+	public void markRemoved(final Mark mark) {
+		marksRemoved.increment();
+		if (mark.levelNum >= 1) removedByLevel[mark.levelNum - 1].increment();
+		if (mark.type == Mark.Type.Law) removedByLaw[mark.refNum - 1].increment();
+		else if (mark.type == Mark.Type.Rule) removedByRule.computeIfAbsent(mark.refNum, k -> new LongAdder()).increment();
+	}
+
+	@Override
+	public void markValidated(final Mark mark, final long nanos) {
+		if (!timed) return;
+		validateNanos.add(nanos);
+	}
+
+	@Override
+	public void lawDone(final Mark mark, final int lawNum, final long nanos, final int newMarks) {
+		if (mark.levelNum >= 1) nanosByLevel[mark.levelNum - 1].add(nanos);
+		nanosByLaw[lawNum - 1].add(nanos);
+	}
+
+	@Override
+	public void ruleDone(final Mark mark, final Rule rule, final long nanos) {
+		if (mark.levelNum >= 1) nanosByLevel[mark.levelNum - 1].add(nanos);
+		nanosByRule.computeIfAbsent(rule.num, k -> new LongAdder()).add(nanos);
+	}
+
+	@Override
+	public void agendaDone(final int numMarks) {
+		agendaDepths.add(numMarks);
+	}
+
+	@Override
+	public void contradiction(final Mark oldMark) {
+		contradictions.increment();
+	}
+
+	@Override
+	public void factViolation(final Mark mark, final Fact fact) {
+		factViolations.increment();
+	}
+
+	@Override
+	public void ruleViolation(final Mark mark, final Rule rule) {
+		ruleViolations.increment();
+	}
+
+	@Override
+	public void lawViolation(final Mark mark) {
+		lawViolations.increment();
+	}
+
+	@Override
+	public void solution(final int numSolutions) {
+		solutions.increment();
+	}
+
+	/** The Histogram class counts values in power-of-two buckets, where bucket i holds values below 2^i. */
+	public static final class Histogram {
+		/** Count for each bucket. */
+		private final LongAdder[] buckets = newAdders(Long.SIZE + 1);
+
+		/** Sum of the values. */
+		private final LongAdder sum = new LongAdder();
+
+		/**
+		 * Adds the value to the histogram.
+		 * @param value Value, which must not be negative.
+		 */
+		public void add(final long value) {
+			buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+			sum.add(value);
+		}
+
+		/**
+		 * Returns the counts of the buckets.
+		 * @return Array of counts.
+		 */
+		public long[] getCounts() {
+			long[] counts = new long[buckets.length];
+			for (int i = 0; i < buckets.length; i++) counts[i] = buckets[i].sum();
+			return counts;
+		}
+
+		/**
+		 * Returns the sum of the values.
+		 * @return Sum.
+		 */
+		public long getSum() {
+			return sum.sum();
+		}
+	}
+}
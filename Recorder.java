@@ -0,0 +1,216 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.Rule;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Recorder class records the events of a solve as fixed-width binary records. Usage:<ol>
+ * <li>Instantiate with a capacity, or with a buffer such as a memory-mapped file.</li>
+ * <li>Pass the recorder to solver.setMetrics, then solve the puzzle, for example via solver.solve.</li>
+ * <li>Call getTrace, and pass the trace to solver.getReplayThread to replay it to a Viewer.</li></ol>
+ * Each record is RECORD_SIZE bytes: event, level number, level character, mark type, verb (1=Is, -1=IsNot, 0=Maybe),<br>
+ * reference character, reference number (2 bytes), noun 1 type and number, noun 2 type and number,<br>
+ * mark number (4 bytes), number of the mark that triggered the mark or -1 (4 bytes), and the fact number,<br>
+ * rule number, or number of solutions (4 bytes). The reasons are not recorded.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class Recorder extends Base implements IMetrics {
+	/** Number of bytes in a record. */
+	public static final int RECORD_SIZE = 24;
+
+	/** Event when a mark is entered. */
+	public static final byte ADD_MARK = 1;
+
+	/** Event when a mark is removed. */
+	public static final byte REMOVE_MARK = 2;
+
+	/** Event when a mark is validated. */
+	public static final byte VALID_MARK = 3;
+
+	/** Event when a potential mark contradicts the recorded mark. */
+	public static final byte CONTRADICTION = 4;
+
+	/** Event when a mark violates a fact. */
+	public static final byte FACT_VIOLATION = 5;
+
+	/** Event when a mark violates a rule. */
+	public static final byte RULE_VIOLATION = 6;
+
+	/** Event when a mark violates a law. */
+	public static final byte LAW_VIOLATION = 7;
+
+	/** Event when a solution is found. */
+	public static final byte SOLUTION = 8;
+
+	/** Buffer of records. */
+	private ByteBuffer buffer;
+
+	/** True if the buffer may be replaced by a bigger one when it is full. */
+	private final boolean growable;
+
+	/** True if a record did not fit in a buffer that cannot grow. */
+	private boolean overflow = false;
+
+	@Override
+	public String toString() {
+		return "Recorder";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor for a buffer on the heap that grows when needed.
+	 * @param capacity Initial number of records.
+	 */
+	public Recorder(final int capacity) {
+		buffer = ByteBuffer.allocate(Math.max(1, capacity) * RECORD_SIZE);
+		growable = true;
+	}
+
+	/**
+	 * Constructor for the given buffer, which does not grow. Records that do not fit are dropped.
+	 * @param buffer Buffer, for example a MappedByteBuffer.
+	 */
+	public Recorder(final ByteBuffer buffer) {
+		this.buffer = buffer;
+		growable = false;
+	}
+
+	/** Clears the records so the buffer can be reused. */
+	public void clear() {
+		buffer.clear();
+		overflow = false;
+	}
+
+	/**
+	 * Returns true if records were dropped because the buffer was full.
+	 * @return True if records were dropped.
+	 */
+	public boolean isOverflow() {
+		return overflow;
+	}
+
+	/**
+	 * Returns the number of records.
+	 * @return Number of records.
+	 */
+	public int getNumRecords() {
+		return buffer.position() / RECORD_SIZE;
+	}
+
+	/**
+	 * Returns a read-only view of the records, from the first record to the last.
+	 * @return Buffer.
+	 */
+	public ByteBuffer getTrace() {
+		ByteBuffer trace = buffer.duplicate();
+		trace.flip();
+		return trace.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Appends a record.
+	 * @param event Event.
+	 * @param mark Mark, or null.
+	 * @param ref Fact number, rule number, or number of solutions, otherwise zero.
+	 */
+	private void put(final byte event, final Mark mark, final int ref) {
+		if (buffer.remaining() < RECORD_SIZE) {
+			if (!growable) {
+				overflow = true;
+				return;
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+
+		buffer.put(event);
+		if (mark == null) {
+			for (int i = 1; i < RECORD_SIZE - 4; i++) buffer.put((byte) 0);
+		}
+		else {
+			buffer.put((byte) mark.levelNum);
+			buffer.put((byte) mark.levelSub);
+			buffer.put((byte) mark.type.ordinal());
+			buffer.put((byte) (mark.verb == Puzzle.Is ? 1 : (mark.verb == Puzzle.IsNot ? -1 : 0)));
+			buffer.put((byte) mark.refSub);
+			buffer.putShort((short) mark.refNum);
+			buffer.put((byte) mark.noun1.type.num);
+			buffer.put((byte) mark.noun1.num);
+			buffer.put((byte) mark.noun2.type.num);
+			buffer.put((byte) mark.noun2.num);
+			buffer.putInt(mark.num);
+			buffer.putInt(mark.refMark == null ? -1 : mark.refMark.num);
+		}
+		buffer.putInt(ref);
+	}
+
+	@Override
+	public boolean isTimed() {
+		return false;
+	}
+
+	@Override
+	public void markAdded(final Mark mark) {
+		put(ADD_MARK, mark, 0);
+	}
+
+	@Override
+	public void markRemoved(final Mark mark) {
+		put(REMOVE_MARK, mark, 0);
+	}
+
+	@Override
+	public void markValidated(final Mark mark, final long nanos) {
+		put(VALID_MARK, mark, 0);
+	}
+
+	@Override
+	public void agendaDone(final int numMarks) {
+	}
+
+	@Override
+	public void contradiction(final Mark oldMark) {
+		put(CONTRADICTION, oldMark, 0);
+	}
+
+	@Override
+	public void factViolation(final Mark mark, final Fact fact) {
+		put(FACT_VIOLATION, mark, fact.num);
+	}
+
+	@Override
+	public void ruleViolation(final Mark mark, final Rule rule) {
+		put(RULE_VIOLATION, mark, rule.num);
+	}
+
+	@Override
+	public void lawViolation(final Mark mark) {
+		put(LAW_VIOLATION, mark, 0);
+	}
+
+	@Override
+	public void solution(final int numSolutions) {
+		put(SOLUTION, null, numSolutions);
+	}
+
+	@Override
+	public void lawDone(final Mark mark, final int lawNum, final long nanos, final int newMarks) {
+	}
+
+	@Override
+	public void ruleDone(final Mark mark, final Rule rule, final long nanos) {
+	}
+}
@@ -0,0 +1,59 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SolveResult class holds the outcome of a headless solve. Instantiated by solver.solve.<br>
+ * Each solution is a compact assignment: for noun type t and the noun n of the first noun type,<br>
+ * the element at (t - 1) * maxNouns + (n - 1) is the one-based number of the noun of type t with n.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class SolveResult extends Base {
+	/** Status returned by the Finder. */
+	public int rs = 0;
+
+	/** Number of solutions found. */
+	public int numSolutions = 0;
+
+	/** Number of marks on the stack when the Finder stopped. */
+	public int numMarks = 0;
+
+	/** Number of positive marks on the stack when the Finder stopped. */
+	public int numPairs = 0;
+
+	/** Number of assumptions made by the Finder. */
+	public int numGuesses = 0;
+
+	/** Elapsed time of the solve in nanoseconds, measured with System.nanoTime like the latency. */
+	public long elapsedTime = 0;
+
+	/** Time in nanoseconds from when the puzzle was submitted to a SolverPool until it was solved, otherwise zero. */
+	public long latency = 0;
+
+	/** Counts of the marks for all levels. See LevelCounter.getCounts. */
+	public int[] markCounts = null;
+
+	/** Counts of the pairs for all levels. See LevelCounter.getCounts. */
+	public int[] pairCounts = null;
+
+	/** List of solutions as compact assignments. */
+	public final List<int[]> solutions = new ArrayList<>();
+
+	/** Trace of the solve recorded by a Recorder, or null. See SolverCache. */
+	public byte[] trace = null;
+
+	@Override
+	public String toString() {
+		return "SolveResult";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+}
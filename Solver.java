@@ -2,12 +2,17 @@ package com.mysterymaster.solver;
 
 import com.mysterymaster.puzzle.*;
 
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The Solver class solves a logic puzzle via the Finder and Lawyer classes. This class implements the<br>
@@ -55,17 +60,28 @@ public final class Solver extends Base implements ISolver, Runnable {
 	public Solver(final IViewer viewer, Spots spots) {
 		this.viewer = viewer;
 		this.spots = spots;
+		viewerMask = viewer.getInterests();
+		okText = (viewerMask & IViewer.SAY_MESSAGES) != 0;
 
 		stats = new Stats();
 		finder = new Finder(this);
 		lawyer = new Lawyer(this);
+		resetLawOrder();
 	}
 
 	/**
-	 * Sets the puzzle. Called by viewer.setPuzzle.
+	 * Sets the puzzle. Called by viewer.setPuzzle.<br>
+	 * The marks, grids, and bits are reused if they are big enough for the puzzle, and only grow when needed.
 	 * @param puzzle Puzzle, which may be null.
 	 */
 	public void setPuzzle(final Puzzle puzzle) {
+		// Clear the cells written for the old puzzle while its layout is still known.
+		clearGrids();
+		numMarks = 0;
+		numValidMarks = 0;
+		for (int i = 0; i < usedMarks; i++) { marks[i].reset(); }
+		usedMarks = 0;
+
 		this.puzzle = puzzle;
 
 		// Calculate number of grids, then pairs, then marks.
@@ -80,31 +96,52 @@ public final class Solver extends Base implements ISolver, Runnable {
 			maxMarks = maxPairs * puzzle.maxNouns;
 		}
 
-		// Initalize marks array.
-		marks = new Mark[maxMarks];
-		for (int i = 0; i < maxMarks; i++) { marks[i] = new Mark(i); }
+		// Grow marks array.
+		if (marks.length < maxMarks) {
+			int oldLength = marks.length;
+			marks = Arrays.copyOf(marks, maxMarks);
+			for (int i = oldLength; i < maxMarks; i++) { marks[i] = new Mark(i); }
+		}
 
-		// Initialize grids array.
-		if (puzzle == null) {
-			grids = null;
+		// Grow grids. There is one cell for each possible mark. The cells are all empty at this point.
+		if (puzzle != null) {
+			if (gridMarks == null || gridMarks.length < maxMarks) {
+				gridMarks = new int[maxMarks];
+				gridVerbs = new byte[maxMarks];
+			}
+			setGridIndex();
 		}
-		else {
-			grids = new Mark[maxGrids][puzzle.maxNouns][puzzle.maxNouns];
-			for (int g = 0; g < maxGrids; g++) {
-				for (int n1 = 0; n1 < puzzle.maxNouns; n1++) {
-					for (int n2 = 0; n2 < puzzle.maxNouns; n2++) {
-						grids[g][n1][n2] = null;
-					}
-				}
+
+		// Initialize the bits, which need one bit per noun in a long.
+		bitsOk = puzzle != null && puzzle.maxNouns <= Long.SIZE;
+		if (bitsOk) {
+			int maxNounTypes = puzzle.maxNounTypes;
+			allBits = (puzzle.maxNouns == Long.SIZE) ? -1L : (1L << puzzle.maxNouns) - 1;
+			int length = maxNounTypes * puzzle.maxNouns * maxNounTypes;
+			if (maybeBits == null || maybeBits.length < length) {
+				maybeBits = new long[length];
+				notBits = new long[length];
+			}
+			if (pairBits == null || pairBits.length < maxNounTypes * maxNounTypes) {
+				pairBits = new long[maxNounTypes * maxNounTypes];
 			}
+			resetGridBits();
 		}
 
+		setWatches();
+
 		finder.setPuzzle(puzzle);
 		lawyer.setPuzzle(puzzle);
 	}
 
-	/** Resets the Solver. Called by doFinder, viewer.reset. */
+	/**
+	 * Resets the Solver. Called by doFinder, viewer.reset.<br>
+	 * Only the marks that were used and the cells that were written are cleared.
+	 */
 	public void reset() {
+		// Clear the grids by walking the stack of marks, before the number of marks is reset.
+		clearGrids();
+
 		if (puzzle != null) puzzle.reset();
 		
 		numGuesses = 0;
@@ -120,73 +157,117 @@ public final class Solver extends Base implements ISolver, Runnable {
 		numSolutions = 0;
 		
 		// Reset marks.
-		for (Mark mark : marks) { mark.reset(); }
-		
-		// Reset grids.
-		if (puzzle != null) {
-			if (grids != null) {
-				for (int g = 0; g < maxGrids; g++) {
-					for (int n1 = 0; n1 < puzzle.maxNouns; n1++) {
-						for (int n2 = 0; n2 < puzzle.maxNouns; n2++) {
-							grids[g][n1][n2] = null;
-						}
-					}
-				}
-			}
-		}
+		for (int i = 0; i < usedMarks; i++) { marks[i].reset(); }
+		usedMarks = 0;
 		
 		stats.reset();
+		resetLawOrder();
 	}
 
 	// <editor-fold defaultstate="collapsed" desc="Thread">
 
 	/** Work flag. True while a thread is running. */
-	private boolean workFlag = false;
+	private volatile boolean workFlag = false;
 
 	/** Quit flag. True when the Quit button is clicked, or app wants to stop the running thread. */
-	boolean quitFlag = false;
+	volatile boolean quitFlag = false;
+
+	/** Flag shared by the branches of a Brancher. True once a branch has won, so reset must not clear the quit. */
+	AtomicBoolean cancelFlag = null;
+
+	/** Stepper object that pauses and resumes the running thread. */
+	private final Stepper stepper = new Stepper();
 
 	/** Requests the solver to stop solving. Called by viewer.doQuit. */
 	public void doQuit() {
 		quitFlag = true;
+		stepper.cancel();
+	}
+
+	/** Resumes the paused thread. Called by viewer.doResume. */
+	public void doResume() {
+		stepper.resume();
+	}
+
+	/** Resumes the paused thread, and pauses it again at the next event. Called by viewer.doStep. */
+	public void doStep() {
+		spots.okPauseNext = true;
+		stepper.resume();
 	}
 
-	/** Thread number, where the zero=based number is either: 0=Finder, 1=Lawyer, 2=Eraser. */
+	/** Headless flag. True while solve is running, so the Viewer is never called and the thread never pauses. */
+	private boolean headless = false;
+
+	/** Result of the headless solve, or null. */
+	private SolveResult result = null;
+
+	/** Trace to replay by the Player thread, or null. */
+	private ByteBuffer trace = null;
+
+	/** Thread number, where the zero=based number is either: 0=Finder, 1=Lawyer, 2=Eraser, 3=Player. */
 	private int threadNum = -1;
 
+	/** Factory that creates the threads, or null to create platform threads. */
+	private ThreadFactory threadFactory = null;
+
+	/**
+	 * Sets the factory that creates the threads returned by getThread. Called by the Viewer.<br>
+	 * For example, pass Thread.ofVirtual().factory() to run the solver on virtual threads, so that<br>
+	 * a server can host many paused sessions. A paused thread parks, so a virtual thread releases its carrier.
+	 * @param threadFactory Thread factory, or null to create platform threads.
+	 */
+	public void setThreadFactory(final ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
 	/**
 	 * Returns a thread with the given name. Called by viewer.doSolve, viewer.addMarkByUser.
 	 * @param num Zero-based thread number.
 	 * @return Thread, or null
 	 */
 	public Thread getThread(final int num) {
-		final String[] names = { "Finder", "Lawyer", "Eraser" };
+		final String[] names = { "Finder", "Lawyer", "Eraser", "Player" };
 		this.threadNum = num;
-		Thread thread = new Thread(this);
+		Thread thread = (threadFactory == null) ? new Thread(this) : threadFactory.newThread(this);
 		thread.setName(names[num]);
 		return thread;
 	}
 
+	/**
+	 * Returns the thread that replays the trace to the Viewer. Called by the Viewer.<br>
+	 * The Viewer is told about each event as if the puzzle were being solved, and the Spots pauses apply.
+	 * @param trace Trace from recorder.getTrace for the same puzzle.
+	 * @return Thread.
+	 */
+	public Thread getReplayThread(final ByteBuffer trace) {
+		this.trace = trace.duplicate();
+		return getThread(3);
+	}
+
 	/**
 	 * The thread runs one of the following methods:<br>
 	 * 1) solver.doFinder.<br>
 	 * 2) solver.doLawyer.<br>
-	 * 3) solver.undoUserMark.
+	 * 3) solver.undoUserMark.<br>
+	 * 4) solver.doReplay.
 	 */
 	@Override
 	public void run() {
 		int rs = 0;
-		workFlag = true;
 		quitFlag = false;
+		stepper.begin();
+		workFlag = true;
 		print("exec solver.run mode=" + threadNum + " workFlag=" + workFlag);
 		switch (threadNum) {
 			case 0: rs = doFinder(); break;
 			case 1: rs = doLawyer(); break;
 			case 2: rs = undoUserMark(); break;
+			case 3: rs = doReplay(); break;
 		}
 		print("done solver.run mode=" + threadNum + " workFlag=" + workFlag + " quitFlag=" + quitFlag + " rs=" + rs);
 		threadNum = -1;
 		workFlag = false;
+		stepper.end();
 		quitFlag = false;
 	}
 
@@ -205,11 +286,214 @@ public final class Solver extends Base implements ISolver, Runnable {
 		return rs;
 	}
 
+	/** Replays the trace to the Viewer without invoking the Finder or the Lawyer.<br>Called by the run method. */
+	private int doReplay() {
+		// Detach the metrics listener, so a Recorder does not record the replay into its own trace.
+		IMetrics oldMetrics = metrics;
+		setMetrics(null);
+		try {
+			reset();
+			time1 = new Date();
+			sayStarted("I started replaying at " + formatDT(time1) + ".");
+
+			ByteBuffer records = trace;
+			while (records.remaining() >= Recorder.RECORD_SIZE && !quitFlag) {
+				byte event = records.get();
+				int levelNum = records.get();
+				char levelSub = (char) records.get();
+				Mark.Type markType = Mark.Type.values()[records.get()];
+				byte code = records.get();
+				char refSub = (char) records.get();
+				int refNum = records.getShort();
+				int t1 = records.get() & 0xFF;
+				int n1 = records.get() & 0xFF;
+				int t2 = records.get() & 0xFF;
+				int n2 = records.get() & 0xFF;
+				int num = records.getInt();
+				int refMarkNum = records.getInt();
+				int ref = records.getInt();
+
+				Mark mark = (event == Recorder.SOLUTION || event == Recorder.ADD_MARK) ? null : findMark(num);
+				switch (event) {
+					case Recorder.ADD_MARK:
+						Verb verb = (code > 0) ? Puzzle.Is : (code < 0 ? Puzzle.IsNot : Puzzle.Maybe);
+						Noun noun1 = puzzle.nounTypes.get(t1 - 1).nouns.get(n1 - 1);
+						Noun noun2 = puzzle.nounTypes.get(t2 - 1).nouns.get(n2 - 1);
+						mark = pushMark("", levelNum, levelSub, markType, refNum, refSub, noun1, verb, noun2, null, -1, findMark(refMarkNum));
+						sayAddMark(mark);
+						break;
+					case Recorder.REMOVE_MARK:
+						if (numMarks > 0) removeMark();
+						break;
+					case Recorder.VALID_MARK:
+						if (mark != null) {
+							mark.valid = true;
+							++numValidMarks;
+							sayValidMark(mark);
+						}
+						break;
+					case Recorder.CONTRADICTION:
+						sayContradiction("A mark was requested that would contradict mark " + num + "!");
+						break;
+					case Recorder.FACT_VIOLATION:
+						if (mark != null) sayFactViolation(mark, puzzle.facts.get(ref - 1));
+						break;
+					case Recorder.RULE_VIOLATION:
+						if (mark != null) sayRuleViolation(mark, puzzle.rules.get(ref - 1));
+						break;
+					case Recorder.LAW_VIOLATION:
+						if (mark != null) sayLawViolation("Mark " + num + " violates a law!", mark);
+						break;
+					case Recorder.SOLUTION:
+						saySolution();
+						break;
+				}
+			}
+
+			Date time2 = new Date();
+			sayStopped("I stopped replaying at " + formatDT(time2) + " in " + getMsgElapsedTime(time1, time2));
+			return 0;
+		}
+		finally {
+			setMetrics(oldMetrics);
+		}
+	}
+
+	/**
+	 * Returns the mark on the stack with the given number, searching from the top. Called by doReplay.
+	 * @param num Mark number.
+	 * @return Mark, or null.
+	 */
+	private Mark findMark(final int num) {
+		for (int i = numMarks - 1; i >= 0; i--) {
+			if (marks[i].num == num) return marks[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Solves the puzzle by invoking the Finder in the current thread without calling the Viewer.<br>
+	 * No messages are built, and the thread never pauses. The stats are still maintained.<br>
+	 * Called by batch applications that do not have a user interface.
+	 * @param puzzle Puzzle.
+	 * @return Result of the solve.
+	 */
+	public SolveResult solve(final Puzzle puzzle) {
+		return solve(puzzle, null, null);
+	}
+
+	/**
+	 * Enumerates the solutions of the puzzle as solve does, but stops once the limit is reached.<br>
+	 * A limit of 2 proves whether the solution is unique. Note: A solution found before the last level<br>
+	 * needed no assumptions, so it is the only solution and the solve stops there.<br>
+	 * Called by applications that validate or generate puzzles.
+	 * @param puzzle Puzzle.
+	 * @param limit Maximum number of solutions, or zero for all solutions.
+	 * @return Result of the solve, with the solutions as compact assignments.
+	 */
+	public SolveResult enumerate(final Puzzle puzzle, final int limit) {
+		int oldMax = maxSolutions;
+		maxSolutions = limit;
+		try {
+			return solve(puzzle);
+		}
+		finally {
+			maxSolutions = oldMax;
+		}
+	}
+
+	/**
+	 * Solves the puzzle as solve does, but first assumes noun 1 is with noun 2 at the last level.<br>
+	 * The assumption is never undone. When the Finder would undo it, the branch is exhausted and the solve stops.<br>
+	 * Called by the Brancher to explore one branch of the search.
+	 * @param puzzle Puzzle.
+	 * @param noun1 Noun 1 in the puzzle, or null for no assumption.
+	 * @param noun2 Noun 2 in the puzzle, or null for no assumption.
+	 * @return Result of the solve.
+	 */
+	SolveResult solve(final Puzzle puzzle, final Noun noun1, final Noun noun2) {
+		setPuzzle(puzzle);
+		headless = true;
+		result = new SolveResult();
+		try {
+			reset();
+			time1 = new Date();
+			long nanos1 = System.nanoTime();
+
+			// A quit requested before reset is kept via the shared flag. See Brancher.
+			if (cancelFlag != null && cancelFlag.get()) quitFlag = true;
+
+			if (noun1 != null) {
+				result.rs = addMark("", MAX_LEVELS, ' ', Mark.Type.Level, MAX_LEVELS, ' ', noun1, Puzzle.Is, noun2, null, -1, null);
+				minMarks = 1;
+			}
+			if (result.rs == 0 && !quitFlag) result.rs = finder.doWork();
+
+			result.elapsedTime = System.nanoTime() - nanos1;
+			result.numSolutions = numSolutions;
+			result.numMarks = numMarks;
+			result.numPairs = numPairs;
+			result.numGuesses = numGuesses;
+			result.markCounts = stats.levelMarks[stats.levelMarks.length - 1].getCounts();
+			result.pairCounts = stats.levelPairs[stats.levelPairs.length - 1].getCounts();
+			return result;
+		}
+		finally {
+			result = null;
+			headless = false;
+			minMarks = 0;
+		}
+	}
+
+	/**
+	 * Starts a headless session without solving, so marks can be entered via addMark and removed via restore.<br>
+	 * Any solution found is added to the result. Called by the Benchmark, which must call endHeadless when done.
+	 * @param puzzle Puzzle to set and reset, or null to keep the current puzzle and its marks.
+	 */
+	void beginHeadless(final Puzzle puzzle) {
+		if (puzzle != null) {
+			setPuzzle(puzzle);
+			reset();
+		}
+		headless = true;
+		result = new SolveResult();
+	}
+
+	/**
+	 * Ends the headless session started by beginHeadless, and clears the quit flag set by any solution.
+	 * @return Result holding the solutions found during the session.
+	 */
+	SolveResult endHeadless() {
+		SolveResult rs = result;
+		result = null;
+		headless = false;
+		quitFlag = false;
+		return rs;
+	}
+
+	/**
+	 * Returns the current solution as a compact assignment. Called by saySolution.
+	 * @return Array of one-based noun numbers. See SolveResult.
+	 */
+	private int[] getSolution() {
+		int maxNouns = puzzle.maxNouns;
+		int[] solution = new int[puzzle.maxNounTypes * maxNouns];
+		for (Noun noun1 : puzzle.nounTypes.get(0).nouns) {
+			solution[noun1.num - 1] = noun1.num;
+			for (int t = 2; t <= puzzle.maxNounTypes; t++) {
+				Noun noun2 = Mark.getPairNoun(noun1, puzzle.nounTypes.get(t - 1));
+				solution[(t - 1) * maxNouns + noun1.num - 1] = (noun2 == null) ? 0 : noun2.num;
+			}
+		}
+		return solution;
+	}
+
 	/** Enforces the laws on the mark entered by the user.<br>Called by the run method. */
 	private int doLawyer() {
 		sayStarted(null);
 		Mark mark = marks[numMarks - 1];
-		int rs = lawyer.doWork(mark);
+		int rs = propagate(numMarks - 1);
+		if (rs == 0) finishAgenda(mark);
 		sayStopped(null);
 		return rs;
 	}
@@ -218,29 +502,34 @@ public final class Solver extends Base implements ISolver, Runnable {
 	private int undoUserMark() {
 		sayStarted(null);
 		int rs = 0;
-		while (numMarks > 0) {
-			if (quitFlag) break;
-			Mark mark = removeMark();
-			if (mark.type == Mark.Type.User) break;
-		}
+		int i = numMarks - 1;
+		while (i > 0 && marks[i].type != Mark.Type.User) i--;
+		restore(Math.max(i, 0));
 		sayStopped(null);
 		return rs;
 	}
 
 	/**
-	 * Pauses the current thread when the Viewer is called.<br>
-	 * To resume, the Viewer must interrupt this thread.<br>
-	 * Called by the IViewer "help" methods in the solver class.
+	 * Returns the ticket for doPause, after telling the Viewer if the thread will pause after the next call to it.<br>
+	 * Called by the IViewer "help" methods in the solver class before they call the Viewer.
+	 * @param pause True if the Spots ask for a pause.
+	 * @return Ticket.
 	 */
-	private void doPause() {
-		if (!workFlag) return;
+	private int getTicket(final boolean pause) {
+		if (pause && workFlag) viewer.willPause();
+		return stepper.getTicket();
+	}
 
-		try {
-			Thread.sleep(Long.MAX_VALUE);
-		}
-		catch (InterruptedException ex) {
-			//print(Thread.currentThread().getName() + " was interrupted and will resume.");
-		}
+	/**
+	 * Pauses the current thread after the Viewer is called if the Spots ask for a pause.<br>
+	 * To resume, the Viewer must call doResume, doStep, or doQuit.<br>
+	 * Called by the IViewer "help" methods in the solver class.
+	 * @param pause Result of the Spots method for the event.
+	 * @param ticket Ticket taken from the stepper before the Viewer was called.
+	 */
+	private void doPause(final boolean pause, final int ticket) {
+		if (!pause || !workFlag) return;
+		stepper.pause(ticket);
 	}
 
 	// </editor-fold>
@@ -289,6 +578,12 @@ public final class Solver extends Base implements ISolver, Runnable {
 	/** Number of solutions. */
 	private int numSolutions = 0;
 
+	/** Maximum number of solutions before a headless solve stops, or zero for no limit. */
+	int maxSolutions = 0;
+
+	/** Number of marks at the bottom of the stack that undoAssumption must not remove. */
+	private int minMarks = 0;
+
 	@Override
 	public int getMaxMarks() { return maxMarks; }
 
@@ -299,8 +594,8 @@ public final class Solver extends Base implements ISolver, Runnable {
 	/** Time when either the Finder or the User began solving the puzzle. */
 	private Date time1 = null;
 
-	/** Date/Time format string. */
-	private final static SimpleDateFormat SDF = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss ms", Locale.US);
+	/** Date/Time formatter. Immutable, so it is shared by every Solver and thread. */
+	private final static DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss ms", Locale.US).withZone(ZoneId.systemDefault());
 
 	/**
 	 * Returns the time as a formatted string.
@@ -308,7 +603,7 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @return String.
 	 */
 	private static String formatDT(final Date time) {
-		return SDF.format(time);
+		return DTF.format(time.toInstant());
 	}
 
 	/**
@@ -326,9 +621,15 @@ public final class Solver extends Base implements ISolver, Runnable {
 
 	// <editor-fold defaultstate="collapsed" desc="Marks">
 
-	/** Array of marks treated as a stack. This array may be empty, but is NEVER null! */
+	/**
+	 * Array of marks treated as a stack. This array may be empty, but is NEVER null!<br>
+	 * Note: The array is reused by the next puzzle, so it may be longer than maxMarks.
+	 */
 	public Mark[] marks = new Mark[0];
 
+	/** Number of marks at the bottom of the array that have been used since the last reset. */
+	private int usedMarks = 0;
+
 	/**
 	 * Returns the last mark in the array, or null.
 	 * @return Mark, or null.
@@ -374,14 +675,15 @@ public final class Solver extends Base implements ISolver, Runnable {
 		// Return success if the mark already exists.
 		if (isMark(noun1, verb, noun2)) return rs;
 
-		String reason = "Rule " + rule.num + (refSub == ' ' ? "" : refSub) + " on mark " + mark.num + ", " + msg;
-		rs = addMark(reason, mark.levelNum, mark.levelSub, Mark.Type.Rule, rule.num, refSub, noun1, verb, noun2, null, -1, mark);
+		// Note: The "Rule 3a on mark 17" prefix is added by getMarkText.
+		rs = addMark(msg, mark.levelNum, mark.levelSub, Mark.Type.Rule, rule.num, refSub, noun1, verb, noun2, null, -1, mark);
 		return rs;
 	}
 
 	/**
 	 * Adds the mark to the queue. Called by the Finder and the Lawyer.
-	 * Note: This method may internally swap the nouns.
+	 * Note: This method may internally swap the nouns. The reason is stored as the name of the mark,<br>
+	 * and the full text of the mark is only built by getMarkText when someone asks for it.
 	 * @param reason Reason.
 	 * @param levelNum Level number.
 	 * @param levelSub Level character.
@@ -418,10 +720,15 @@ public final class Solver extends Base implements ISolver, Runnable {
 		Mark oldMark = getGridMark(noun1, noun2);
 		if (oldMark != null) {
 			if (oldMark.verb != verb) {
-				if (markType != Mark.Type.Rule) {
-					String refTo = "" + refNum + (refSub == ' ' ? "" : refSub);
-					String msg = (markType == Mark.Type.User ? "The " + markType.name : markType.name + " " + refTo) +
-					 " requests a mark that would contradict mark " + oldMark.num + "!" + NL + reason;
+				// A rule may override the contradiction, so only the other contradictions are reported.
+				if (markType != Mark.Type.Rule) metrics.contradiction(oldMark);
+				if (markType != Mark.Type.Rule && !headless) {
+					String msg = null;
+					if (okText) {
+						String refTo = "" + refNum + (refSub == ' ' ? "" : refSub);
+						msg = (markType == Mark.Type.User ? "The " + markType.name : markType.name + " " + refTo) +
+						 " requests a mark that would contradict mark " + oldMark.num + "!" + NL + reason;
+					}
 					sayContradiction(msg);
 				}
 				rs = -1;
@@ -435,28 +742,7 @@ public final class Solver extends Base implements ISolver, Runnable {
 			throw new Error("solver.addMark Error: Too many marks!");
 		}
 
-		// Determine the who and what for the potential mark.
-		String whom = (markType == Mark.Type.User) ? "You" : "I";
-		String what = (markType == Mark.Type.Level && levelNum == MAX_LEVELS) ? " assumed " : " entered ";
-		String name = whom + what + "'" + verb.code + "' for " + noun1.name + " and " + noun2.name + ".";
-		if (reason.length() > 0) name += NL + reason;
-
-		// Update the number of marks along with updating the mark.
-		Mark mark = marks[numMarks++];
-		mark.update(name, levelNum, levelSub, markType, refNum, refSub, noun1, verb, noun2, facts, lonerNum, refMark);
-
-		// Update the number of guesses.
-		if (mark.guess) ++numGuesses;
-
-		// Update the number of pairs if the verb is positive.
-		if (mark.verb == Puzzle.Is) {
-			++numPairs;
-			mark.noun1.pairs[mark.noun2.type.num - 1] = mark;
-			mark.noun2.pairs[mark.noun1.type.num - 1] = mark;
-		}
-
-		// Update the grids.
-		setGridMark(mark);
+		Mark mark = pushMark(reason, levelNum, levelSub, markType, refNum, refSub, noun1, verb, noun2, facts, lonerNum, refMark);
 
 		// Each fact in the facts array updates the counters.
 		for (Fact fact : mark.facts) {
@@ -476,37 +762,279 @@ public final class Solver extends Base implements ISolver, Runnable {
 			++numRuleHits;
 		}
 
-		sayAddMark(name, mark);
+		sayAddMark(mark);
 
 		// Note: When the user enters a mark, the Lawyer is invoked in its own thread.
+		// A mark entered while the Lawyer is working waits on the agenda, so addMark does not recurse.
 		if (mark.type != Mark.Type.User) {
-			rs = lawyer.doWork(mark);
+			if (propagating) return rs;
+			rs = propagate(numMarks - 1);
 			if (rs != 0) return rs;
 		}
 
+		finishAgenda(mark);
+
+		//print("solver.addMark rs=" + rs);
+		return rs;
+	}
+
+	/**
+	 * Fills the grids if allowed, and reports a solution if every mark is valid. Called by addMark, doLawyer<br>
+	 * once the agenda is done, since the marks entered while propagating return before getting here.
+	 * @param mark Mark that started the agenda.
+	 */
+	private void finishAgenda(final Mark mark) {
+		// Fill the remaining cells once every noun is paired and every mark has been validated.
+		if (spots.okFillGrids && numPairs == maxPairs && numValidMarks == numMarks && numMarks < maxMarks) fillGrids(mark);
+
 		// See if a solution was found AFTER the Lawyer has validated ALL marks.
 		if (numValidMarks == maxMarks) {
 			saySolution();
 			if (mark.levelNum < Solver.MAX_LEVELS) quitFlag = true;
 		}
+	}
 
-		//print("solver.addMark rs=" + rs);
+	/** Propagation flag. True while the Lawyer is working through the agenda. */
+	private boolean propagating = false;
+
+	/** Metrics listener. The default listener does nothing. */
+	private IMetrics metrics = IMetrics.NONE;
+
+	/** True if the Lawyer is timed for the metrics listener. */
+	private boolean timed = false;
+
+	/**
+	 * Returns the metrics listener. Called by the SolverCache.
+	 * @return Metrics listener.
+	 */
+	public IMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics listener. Called by the Viewer or a batch application before solving.
+	 * @param metrics Metrics listener, or null for none.
+	 */
+	public void setMetrics(final IMetrics metrics) {
+		this.metrics = (metrics == null) ? IMetrics.NONE : metrics;
+		this.timed = this.metrics.isTimed();
+	}
+
+	/**
+	 * Has the Lawyer validate each mark on the agenda. Called by addMark, doLawyer.<br>
+	 * The agenda is the marks from the given index to the top of the stack. A mark entered by the Lawyer<br>
+	 * is pushed on the stack, and so is validated in turn after the current mark instead of recursively.<br>
+	 * Duplicate marks never reach the agenda, since addMark returns early if the mark already exists.
+	 * @param first Index of the first mark on the agenda.
+	 * @return Status of the first mark that failed, otherwise zero.
+	 */
+	private int propagate(final int first) {
+		int rs = 0;
+		boolean timing = timed || stats.okTiming;
+		propagating = true;
+		try {
+			int i = first;
+			for (; i < numMarks; i++) {
+				if (quitFlag) break;
+				Mark mark = marks[i];
+				long t1 = timing ? System.nanoTime() : 0;
+				rs = lawyer.doWork(mark);
+				long t = timing ? System.nanoTime() - t1 : 0;
+				if (stats.okTiming) stats.timeValidation(mark, t);
+				if (rs != 0) break;
+				metrics.markValidated(mark, t);
+			}
+			metrics.agendaDone(i - first);
+		}
+		finally {
+			propagating = false;
+		}
 		return rs;
 	}
 
+	/**
+	 * Returns true if the Lawyer must time each law and rule it runs, and report it via lawDone and ruleDone.<br>
+	 * Called by the Lawyer for each mark.
+	 * @return True if the laws and rules are timed.
+	 */
+	boolean isLawTimed() {
+		return timed || stats.okTiming || spots.okAdaptive;
+	}
+
+	/**
+	 * Records the time the Lawyer spent running the law on the mark. Called by the Lawyer after each law it runs,<br>
+	 * if isLawTimed is true. The time is measured around the law only. Since addMark does not recurse while<br>
+	 * propagating, the marks the law entered are the growth of numMarks while it ran.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param lawNum One-based law number.
+	 * @param nanos Time in nanoseconds.
+	 * @param newMarks Number of marks the law entered.
+	 */
+	void lawDone(final Mark mark, final int lawNum, final long nanos, final int newMarks) {
+		stats.timeLaw(mark, lawNum, nanos, newMarks);
+		metrics.lawDone(mark, lawNum, nanos, newMarks);
+	}
+
+	/**
+	 * Records the time the Lawyer spent running the rule on the mark. Called by the Lawyer after each rule it runs,<br>
+	 * if isLawTimed is true.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param rule Rule.
+	 * @param nanos Time in nanoseconds.
+	 */
+	void ruleDone(final Mark mark, final Rule rule, final long nanos) {
+		stats.timeRule(mark, rule.num, nanos);
+		metrics.ruleDone(mark, rule, nanos);
+	}
+
+	/** Number of calls to getLawOrder between sorts of the laws. */
+	private static final int LAW_ORDER_AGE = 256;
+
+	/** One-based law numbers in the order the Lawyer should apply them. */
+	private final int[] lawOrder = new int[MAX_LAWS];
+
+	/** Number of calls to getLawOrder since the laws were last sorted. */
+	private int lawOrderAge = 0;
+
+	/** Sets the law order to the order of the law numbers. Called by reset. */
+	private void resetLawOrder() {
+		for (int i = 0; i < MAX_LAWS; i++) lawOrder[i] = i + 1;
+		lawOrderAge = 0;
+	}
+
+	/**
+	 * Returns the order in which the Lawyer must apply the laws. Called by the Lawyer for each mark.<br>
+	 * The Lawyer must run the laws by iterating the returned array, instead of in the order of the law numbers,<br>
+	 * and report each law via lawDone. If the okAdaptive spot is set, the laws are sorted every so often by<br>
+	 * how many marks they entered per nanosecond of running on the current puzzle, as reported via lawDone,<br>
+	 * so cheap productive laws run first. No law is skipped.
+	 * @return Array of one-based law numbers, which must not be modified.
+	 */
+	int[] getLawOrder() {
+		if (spots.okAdaptive && ++lawOrderAge >= LAW_ORDER_AGE) {
+			stats.sortLaws(lawOrder);
+			lawOrderAge = 0;
+		}
+		return lawOrder;
+	}
+
+	/**
+	 * Pushes the mark on the stack, and updates the guesses, pairs, and grids. Called by addMark, fillGrids, doReplay.<br>
+	 * The nouns must already be in order, so noun1.type.num &lt; noun2.type.num.
+	 * @return Mark.
+	 */
+	private Mark pushMark(final String reason, final int levelNum, final char levelSub, final Mark.Type markType, final int refNum, final char refSub, final Noun noun1, final Verb verb, final Noun noun2, final List<Fact> facts, final int lonerNum, final Mark refMark) {
+		// Update the number of marks along with updating the mark.
+		Mark mark = marks[numMarks++];
+		if (numMarks > usedMarks) usedMarks = numMarks;
+		mark.update(reason, levelNum, levelSub, markType, refNum, refSub, noun1, verb, noun2, facts, lonerNum, refMark);
+
+		// Update the number of guesses.
+		if (mark.guess) ++numGuesses;
+
+		// Update the number of pairs if the verb is positive.
+		if (mark.verb == Puzzle.Is) {
+			++numPairs;
+			mark.noun1.pairs[mark.noun2.type.num - 1] = mark;
+			mark.noun2.pairs[mark.noun1.type.num - 1] = mark;
+		}
+
+		// Update the grids.
+		setGridMark(mark, numMarks - 1);
+		return mark;
+	}
+
+	/**
+	 * Enters an 'X' in each empty cell without invoking the Lawyer. Called by addMark.<br>
+	 * When every noun is paired, each empty cell can only be an 'X', so the marks are entered as Law 1 marks<br>
+	 * and counted as validated. This lets a solution be found without a Lawyer pass for each forced 'X'.
+	 * @param refMark Mark that completed the pairs.
+	 */
+	private void fillGrids(final Mark refMark) {
+		for (int t1 = 1; t1 < puzzle.maxNounTypes; t1++) {
+			NounType nounType1 = puzzle.nounTypes.get(t1 - 1);
+			for (int t2 = t1 + 1; t2 <= puzzle.maxNounTypes; t2++) {
+				NounType nounType2 = puzzle.nounTypes.get(t2 - 1);
+				for (Noun noun1 : nounType1.nouns) {
+					for (Noun noun2 : nounType2.nouns) {
+						if (quitFlag) return;
+						if (gridMarks[getGridCell(noun1, noun2)] != 0) continue;
+
+						Mark mark = pushMark("Every noun is paired.", refMark.levelNum, refMark.levelSub, Mark.Type.Law, 1, ' ', noun1, Puzzle.IsNot, noun2, null, -1, refMark);
+						mark.valid = true;
+						++numValidMarks;
+						sayAddMark(mark);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the text of the mark, which is built from the fields of the mark only when asked.<br>
+	 * The text states who entered what for which nouns, followed by the reason.<br>
+	 * Called by sayAddMark, sayFactViolation, and the Viewer.
+	 * @param mark Mark.
+	 * @return String.
+	 */
+	public String getMarkText(final Mark mark) {
+		String whom = (mark.type == Mark.Type.User) ? "You" : "I";
+		String what = (mark.type == Mark.Type.Level && mark.levelNum == MAX_LEVELS) ? " assumed " : " entered ";
+		String text = whom + what + "'" + mark.verb.code + "' for " + mark.noun1.name + " and " + mark.noun2.name + ".";
+
+		String reason = mark.name;
+		if (mark.type == Mark.Type.Rule) {
+			reason = "Rule " + mark.refNum + (mark.refSub == ' ' ? "" : mark.refSub) + " on mark " + mark.refMark.num + ", " + reason;
+		}
+		if (reason.length() > 0) text += NL + reason;
+		return text;
+	}
+
 	/** Removes marks back to and including the last mark entered by the levels. */
 	void undoAssumption() {
-		while (numMarks > 0) {
-			if (quitFlag) break;
-			Mark mark = removeMark();
-			if (mark.type == Mark.Type.Level) break;
+		if (quitFlag) return;
+
+		int i = numMarks - 1;
+		while (i >= minMarks && marks[i].type != Mark.Type.Level) i--;
+		boolean found = i >= minMarks;
+		restore(found ? i : minMarks);
+
+		// Stop if the Finder would have to undo the assumption given to solve.
+		if (!found && minMarks > 0) quitFlag = true;
+	}
+
+	/**
+	 * Returns a token for the current state of the solver, which is the height of the stack of marks.<br>
+	 * The stack of marks is the trail, so nothing is copied.
+	 * @return Token to pass to restore.
+	 */
+	public int checkpoint() {
+		return numMarks;
+	}
+
+	/**
+	 * Rolls back the solver to the state given by the token from checkpoint. Called by undoAssumption, undoUserMark.<br>
+	 * When headless, the marks are removed in bulk without calling the Viewer or checking the quit flag.<br>
+	 * Otherwise the Viewer is told about each mark, so the restore stops early if the quit flag is set.<br>
+	 * Note: Must be called by the thread that is solving, or when no thread is running.
+	 * @param token Token from checkpoint.
+	 */
+	public void restore(final int token) {
+		if (headless) {
+			while (numMarks > token) removeMark();
+		}
+		else {
+			while (numMarks > token) {
+				if (quitFlag) break;
+				removeMark();
+			}
 		}
 
 		if (numValidMarks > numMarks) numValidMarks = numMarks;
 	}
 
 	/**
-	 * Removes the last mark that was entered. Called by undoUserMark, undoAssumption.
+	 * Removes the last mark that was entered. Called by restore.
 	 * @return Mark that was removed.
 	 */
 	private Mark removeMark() {
@@ -540,8 +1068,23 @@ public final class Solver extends Base implements ISolver, Runnable {
 
 	// <editor-fold defaultstate="collapsed" desc="Grids">
 
-	/** Array of grids. */
-	private Mark[][][] grids = null;
+	/**
+	 * Index plus one of the mark in each cell of the grids, where zero means the cell is empty.<br>
+	 * The grids are stored one after another, and each grid is stored row by row.
+	 */
+	private int[] gridMarks = null;
+
+	/** Verb code in each cell of the grids. See getVerbCode. */
+	private byte[] gridVerbs = null;
+
+	/**
+	 * Table of three ints for each pair of one-based noun type numbers (t1, t2): the offset of the grid,<br>
+	 * the stride for noun 1, and the stride for noun 2. The offset absorbs the one-based noun numbers.
+	 */
+	private int[] gridIndex = null;
+
+	/** Number of noun types plus one. This is the row length of the gridIndex table. */
+	private int gridSpan = 0;
 
 	/**
 	 * Returns the one-based grid number given the one-based numbers of two noun types.
@@ -553,6 +1096,43 @@ public final class Solver extends Base implements ISolver, Runnable {
 		return (t1 < t2) ? (t1 - 1) * puzzle.maxNounTypes + t2 - t1 * (t1 + 1) / 2 : (t2 - 1) * puzzle.maxNounTypes + t1 - t2 * (t2 + 1) / 2;
 	}
 
+	/** Builds the gridIndex table so the cell for any two nouns is found without branches. Called by setPuzzle. */
+	private void setGridIndex() {
+		int maxNouns = puzzle.maxNouns;
+		gridSpan = puzzle.maxNounTypes + 1;
+		if (gridIndex == null || gridIndex.length < 3 * gridSpan * gridSpan) gridIndex = new int[3 * gridSpan * gridSpan];
+		for (int t1 = 1; t1 < gridSpan; t1++) {
+			for (int t2 = 1; t2 < gridSpan; t2++) {
+				if (t1 == t2) continue;
+				int k = 3 * (t1 * gridSpan + t2);
+				int g = getGridNum(t1, t2);
+				gridIndex[k] = (g - 1) * maxNouns * maxNouns - maxNouns - 1;
+				gridIndex[k + 1] = (t1 < t2) ? maxNouns : 1;
+				gridIndex[k + 2] = (t1 < t2) ? 1 : maxNouns;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the cell in the grids given two nouns of different types.
+	 * @param noun1 Noun 1.
+	 * @param noun2 Noun 2.
+	 * @return Zero-based index into gridMarks and gridVerbs.
+	 */
+	private int getGridCell(final Noun noun1, final Noun noun2) {
+		int k = 3 * (noun1.type.num * gridSpan + noun2.type.num);
+		return gridIndex[k] + noun1.num * gridIndex[k + 1] + noun2.num * gridIndex[k + 2];
+	}
+
+	/**
+	 * Returns the code of the verb stored in the grids.
+	 * @param verb Verb.
+	 * @return 1 for Is, -1 for IsNot, otherwise 0.
+	 */
+	private static byte getVerbCode(final Verb verb) {
+		return (byte) (verb == Puzzle.Is ? 1 : (verb == Puzzle.IsNot ? -1 : 0));
+	}
+
 	/**
 	 * Returns the mark in the grid given by two nouns.
 	 * @param noun1 Noun 1.
@@ -560,47 +1140,26 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @return The Mark object, or null.
 	 */
 	Mark getGridMark(final Noun noun1, final Noun noun2) {
-		return getGridMark2(noun1.type.num, noun1.num, noun2.type.num, noun2.num);
-	}
-
-	private Mark getGridMark2(final int t1, final int n1, final int t2, final int n2) {
-		if (t1 == t2) return null;
-		if (t1 < t2) {
-			int g = getGridNum(t1, t2);
-			return grids[g - 1][n1 - 1][n2 - 1];
-		}
-		else {
-			int g = getGridNum(t2, t1);
-			return grids[g - 1][n2 - 1][n1 - 1];
-		}
+		if (noun1.type == noun2.type) return null;
+		int i = gridMarks[getGridCell(noun1, noun2)];
+		return (i == 0) ? null : marks[i - 1];
 	}
 
 	/**
 	 * Enters the given mark into the grids.
 	 * @param mark Mark.
+	 * @param i Index of the mark in the marks array.
 	 */
-	private void setGridMark(final Mark mark) {
-		setGridMark2(mark.noun1.type.num, mark.noun1.num, mark.noun2.type.num, mark.noun2.num, mark);
+	private void setGridMark(final Mark mark, final int i) {
+		int cell = getGridCell(mark.noun1, mark.noun2);
+		gridMarks[cell] = i + 1;
+		gridVerbs[cell] = getVerbCode(mark.verb);
+		if (bitsOk) setGridBits(mark, true);
 	}
 
-	/**
-	 * Enters the mark/null into the grids using the one-based numbers of two nouns.
-	 * @param t1 One-based number of noun 1's type.
-	 * @param n1 One-based number of noun 1.
-	 * @param t2 One-based number of noun 2's type.
-	 * @param n2 One-based number of noun 2.
-	 * @param mark Mark, or null.
-	 */
-	private void setGridMark2(final int t1, final int n1, final int t2, final int n2, final Mark mark) {
-		if (t1 == t2) return;
-		if (t1 < t2) {
-			int g = getGridNum(t1, t2);
-			grids[g - 1][n1 - 1][n2 - 1] = mark;
-		}
-		else {
-			int g = getGridNum(t2, t1);
-			grids[g - 1][n2 - 1][n1 - 1] = mark;
-		}
+	/** Removes the marks on the stack from the grids and the bits. Called by setPuzzle, reset. */
+	private void clearGrids() {
+		for (int i = numMarks - 1; i >= 0; i--) removeGridMark(marks[i]);
 	}
 
 	/**
@@ -608,14 +1167,17 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param mark Mark.
 	 */
 	private void removeGridMark(final Mark mark) {
-		setGridMark2(mark.noun1.type.num, mark.noun1.num, mark.noun2.type.num, mark.noun2.num, null);
+		int cell = getGridCell(mark.noun1, mark.noun2);
+		gridMarks[cell] = 0;
+		gridVerbs[cell] = 0;
+		if (bitsOk) setGridBits(mark, false);
 	}
 
 	@Override
 	public Verb getGridVerb(final Noun noun1, final Noun noun2) {
 		if (noun1.type == noun2.type) return Puzzle.IsNot;
-		Mark mark = getGridMark(noun1, noun2);
-		return (mark == null) ? Puzzle.Maybe : mark.verb;
+		byte code = gridVerbs[getGridCell(noun1, noun2)];
+		return (code == 0) ? Puzzle.Maybe : (code > 0 ? Puzzle.Is : Puzzle.IsNot);
 	}
 
 	/**
@@ -626,8 +1188,9 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @return True if the mark already exists, otherwise false.
 	 */
 	boolean isMark(final Noun noun1, final Verb verb, final Noun noun2) {
-		Mark mark = getGridMark(noun1, noun2);
-		boolean b = mark != null && mark.verb == verb;
+		if (noun1.type == noun2.type) return false;
+		int cell = getGridCell(noun1, noun2);
+		boolean b = gridMarks[cell] != 0 && gridVerbs[cell] == getVerbCode(verb);
 		//print("puzzle.isMark(" + noun1 + "," + verb + "," + noun2 + ")?" + b);
 		return b;
 	}
@@ -640,18 +1203,249 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 */
 	List<Noun> getNouns(final Noun noun1, final NounType nounType2) {
 		List<Noun> nouns = new ArrayList<>();
+		boolean sameType = noun1.type == nounType2;
+		if (bitsOk && !sameType) {
+			for (long bits = maybeBits[getBitsRow(noun1, nounType2)]; bits != 0; bits &= bits - 1) {
+				nouns.add(nounType2.nouns.get(Long.numberOfTrailingZeros(bits)));
+			}
+			return nouns;
+		}
 		for (Noun noun2 : nounType2.nouns) {
-			if (getGridMark(noun1, noun2) == null) nouns.add(noun2);
+			if (sameType || gridMarks[getGridCell(noun1, noun2)] == 0) nouns.add(noun2);
 		}
 		return nouns;
 	}
 
 	// </editor-fold>
 
+	// <editor-fold defaultstate="collapsed" desc="Bits">
+
+	/** True if the bits are maintained. This requires the number of nouns per type to fit in a long. */
+	private boolean bitsOk = false;
+
+	/** Bits for all of the nouns of one type, where bit (n - 1) is for the noun with the one-based number n. */
+	private long allBits = 0;
+
+	/** For each noun and each noun type, the bits of the nouns of that type that have no mark with the noun. */
+	private long[] maybeBits = null;
+
+	/** For each noun and each noun type, the bits of the nouns of that type that have an 'X' with the noun. */
+	private long[] notBits = null;
+
+	/** For each noun type t1 and noun type t2, the bits of the nouns of type t2 that are with a noun of type t1. */
+	private long[] pairBits = null;
+
+	/** Sets the bits for empty grids. Called by setPuzzle, since reset walks the stack instead. */
+	private void resetGridBits() {
+		int maxNounTypes = puzzle.maxNounTypes;
+		int length = maxNounTypes * puzzle.maxNouns * maxNounTypes;
+		Arrays.fill(maybeBits, 0, length, allBits);
+		Arrays.fill(notBits, 0, length, 0);
+		Arrays.fill(pairBits, 0, maxNounTypes * maxNounTypes, 0);
+	}
+
+	/**
+	 * Returns the index of the bits for the noun and the noun type.
+	 * @param noun Noun.
+	 * @param nounType Noun type.
+	 * @return Zero-based index into maybeBits and notBits.
+	 */
+	private int getBitsRow(final Noun noun, final NounType nounType) {
+		return ((noun.type.num - 1) * puzzle.maxNouns + noun.num - 1) * puzzle.maxNounTypes + nounType.num - 1;
+	}
+
+	/**
+	 * Updates the bits when the mark is entered or removed. Called by setGridMark, removeGridMark.
+	 * @param mark Mark.
+	 * @param on True if the mark is entered, false if the mark is removed.
+	 */
+	private void setGridBits(final Mark mark, final boolean on) {
+		Noun noun1 = mark.noun1;
+		Noun noun2 = mark.noun2;
+		int row1 = getBitsRow(noun1, noun2.type);
+		int row2 = getBitsRow(noun2, noun1.type);
+		long bit1 = 1L << (noun1.num - 1);
+		long bit2 = 1L << (noun2.num - 1);
+
+		maybeBits[row1] ^= bit2;
+		maybeBits[row2] ^= bit1;
+		if (mark.verb == Puzzle.IsNot) {
+			notBits[row1] ^= bit2;
+			notBits[row2] ^= bit1;
+		}
+		else if (mark.verb == Puzzle.Is) {
+			int maxNounTypes = puzzle.maxNounTypes;
+			pairBits[(noun1.type.num - 1) * maxNounTypes + noun2.type.num - 1] ^= bit2;
+			pairBits[(noun2.type.num - 1) * maxNounTypes + noun1.type.num - 1] ^= bit1;
+		}
+	}
+
+	/**
+	 * Returns the bits of the nouns of the given type that have no 'X' with the noun.<br>
+	 * This is the same as the verb being Maybe when the noun is not with a noun of that type.
+	 * @param noun Noun.
+	 * @param nounType Noun type, which must not be the type of the noun.
+	 * @return Bits.
+	 */
+	private long getMaybeBits(final Noun noun, final NounType nounType) {
+		return allBits & ~notBits[getBitsRow(noun, nounType)];
+	}
+
+	/**
+	 * Returns the bits of the nouns of the given type that can be with the noun. See canBeWith.
+	 * @param noun Noun.
+	 * @param nounType Noun type, which must not be the type of the noun.
+	 * @return Bits.
+	 */
+	private long getCanBeBits(final Noun noun, final NounType nounType) {
+		Noun pair = Mark.getPairNoun(noun, nounType);
+		if (pair != null) return 1L << (pair.num - 1);
+		return getMaybeBits(noun, nounType) & ~pairBits[(noun.type.num - 1) * puzzle.maxNounTypes + nounType.num - 1];
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="Watches">
+
+	/** For each noun, the list of facts that reference it. */
+	private List<List<Fact>> factWatches = new ArrayList<>();
+
+	/** For each noun, the list of rules that reference it. */
+	private List<List<Rule>> ruleWatches = new ArrayList<>();
+
+	/** List of rules that do not reference any noun, which must be examined for every mark. */
+	private final List<Rule> globalRules = new ArrayList<>();
+
+	/** Facts watched by the last mark given to getWatchedFacts. Reused for each mark. */
+	private final List<Fact> markFacts = new ArrayList<>();
+
+	/** Rules watched by the last mark given to getWatchedRules. Reused for each mark. */
+	private final List<Rule> markRules = new ArrayList<>();
+
+	/**
+	 * Returns the index of the noun in the lists of watches.
+	 * @param noun Noun.
+	 * @return Zero-based index.
+	 */
+	private int getWatchNum(final Noun noun) {
+		return (noun.type.num - 1) * puzzle.maxNouns + noun.num - 1;
+	}
+
+	/** Builds the lists of watches from the facts and rules of the puzzle. Called by setPuzzle. */
+	private void setWatches() {
+		factWatches.clear();
+		ruleWatches.clear();
+		globalRules.clear();
+		if (puzzle == null) return;
+
+		int n = puzzle.maxNounTypes * puzzle.maxNouns;
+		for (int i = 0; i < n; i++) {
+			factWatches.add(new ArrayList<>());
+			ruleWatches.add(new ArrayList<>());
+		}
+
+		for (Fact fact : puzzle.facts) {
+			factWatches.get(getWatchNum(fact.noun1)).add(fact);
+			if (fact.noun2 != fact.noun1) factWatches.get(getWatchNum(fact.noun2)).add(fact);
+		}
+
+		// A rule that does not reference any noun is kept apart, since it must be examined for every mark.
+		for (Rule rule : puzzle.rules) {
+			int numNouns = 0;
+			for (Noun noun : rule.nouns) {
+				List<Rule> rules = ruleWatches.get(getWatchNum(noun));
+				if (!rules.contains(rule)) rules.add(rule);
+				++numNouns;
+			}
+			if (numNouns == 0) globalRules.add(rule);
+		}
+	}
+
+	/**
+	 * Returns the facts that reference the noun. For a mark, use getWatchedFacts(mark) instead,<br>
+	 * since a fact that references both nouns is in both lists.
+	 * @param noun Noun.
+	 * @return List of facts, which must not be modified.
+	 */
+	List<Fact> getWatchedFacts(final Noun noun) {
+		return factWatches.get(getWatchNum(noun));
+	}
+
+	/**
+	 * Returns the rules that reference the noun. The rules that do not reference any noun are not included.
+	 * @param noun Noun.
+	 * @return List of rules, which must not be modified.
+	 */
+	List<Rule> getWatchedRules(final Noun noun) {
+		return ruleWatches.get(getWatchNum(noun));
+	}
+
+	/**
+	 * Returns the facts that reference either noun of the mark, each fact once. Called by the Lawyer for each mark.
+	 * @param mark Mark.
+	 * @return List of facts, which must not be modified, and is only valid until the next call.
+	 */
+	List<Fact> getWatchedFacts(final Mark mark) {
+		markFacts.clear();
+		markFacts.addAll(factWatches.get(getWatchNum(mark.noun1)));
+		for (Fact fact : factWatches.get(getWatchNum(mark.noun2))) {
+			if (fact.noun1 != mark.noun1 && fact.noun2 != mark.noun1) markFacts.add(fact);
+		}
+		return markFacts;
+	}
+
+	/**
+	 * Returns the rules that reference either noun of the mark, followed by the rules that do not reference any noun.<br>
+	 * Each rule is in the list once. Called by the Lawyer for each mark.
+	 * @param mark Mark.
+	 * @return List of rules, which must not be modified, and is only valid until the next call.
+	 */
+	List<Rule> getWatchedRules(final Mark mark) {
+		markRules.clear();
+		markRules.addAll(ruleWatches.get(getWatchNum(mark.noun1)));
+		for (Rule rule : ruleWatches.get(getWatchNum(mark.noun2))) {
+			if (!rule.nouns.contains(mark.noun1)) markRules.add(rule);
+		}
+		markRules.addAll(globalRules);
+		return markRules;
+	}
+
+	// </editor-fold>
+
 	// <editor-fold defaultstate="collapsed" desc="Pairs">
 
 	@Override
 	public boolean maybeRelated(final Noun noun1, final Link link, final Noun noun2) {
+		if (!bitsOk) return maybeRelatedByGrid(noun1, link, noun2);
+
+		NounType type = link.nounType;
+		Noun slot1 = Mark.getPairNoun(noun1, type);
+		Noun slot2 = Mark.getPairNoun(noun2, type);
+
+		// Returns true if both nouns are slotted, and the slots are related.
+		if (slot1 != null && slot2 != null) return link.getVerb(slot1, slot2) == Puzzle.Is;
+
+		// Returns true if any possible slot for noun1 is related to any possible slot for noun2.
+		long bits1 = (slot1 != null) ? 1L << (slot1.num - 1) : (noun1.type == type ? 0 : getMaybeBits(noun1, type));
+		long bits2 = (slot2 != null) ? 1L << (slot2.num - 1) : (noun2.type == type ? 0 : getMaybeBits(noun2, type));
+		for (long b1 = bits1; b1 != 0; b1 &= b1 - 1) {
+			Noun slotA = type.nouns.get(Long.numberOfTrailingZeros(b1));
+			for (long b2 = bits2; b2 != 0; b2 &= b2 - 1) {
+				Noun slotB = type.nouns.get(Long.numberOfTrailingZeros(b2));
+				if (link.getVerb(slotA, slotB) == Puzzle.Is) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the two nouns may be related by the link, by examining the grids. Called by maybeRelated.
+	 * @param noun1 Noun 1.
+	 * @param link Link.
+	 * @param noun2 Noun 2.
+	 * @return True if the nouns may be related, otherwise false.
+	 */
+	private boolean maybeRelatedByGrid(final Noun noun1, final Link link, final Noun noun2) {
 		boolean ok = false;
 		NounType type = link.nounType;
 
@@ -701,6 +1495,10 @@ public final class Solver extends Base implements ISolver, Runnable {
 
 	@Override
 	public Noun getCommonNoun(final Noun noun1, final Noun noun2, final NounType nounType3) {
+		if (bitsOk && noun1.type != nounType3 && noun2.type != nounType3) {
+			long bits = getCanBeBits(noun1, nounType3) & getCanBeBits(noun2, nounType3);
+			return (bits == 0) ? null : nounType3.nouns.get(Long.numberOfTrailingZeros(bits));
+		}
 		for (Noun noun3 : nounType3.nouns) {
 			if (canBeWith(noun1, noun3) && canBeWith(noun2, noun3)) return noun3;
 		}
@@ -713,8 +1511,7 @@ public final class Solver extends Base implements ISolver, Runnable {
 		Noun noun;
 
 		// Return false if there is an 'X' for noun1 and noun2.
-		Mark oldMark = getGridMark(noun1, noun2);
-		if (oldMark != null && oldMark.verb == Puzzle.IsNot) return rs;
+		if (noun1.type != noun2.type && gridVerbs[getGridCell(noun1, noun2)] < 0) return rs;
 
 		// Return false if noun1 is with another noun of noun2's type.
 		noun = Mark.getPairNoun(noun1, noun2.type);
@@ -730,7 +1527,10 @@ public final class Solver extends Base implements ISolver, Runnable {
 	@Override
 	public boolean cannotBeWith(final List<Noun> nouns, final Noun noun2) {
 		for (Noun noun1 : nouns) {
-			if (getGridVerb(noun1, noun2) != Puzzle.IsNot) return false;
+			if (bitsOk && noun1.type != noun2.type) {
+				if ((notBits[getBitsRow(noun2, noun1.type)] & (1L << (noun1.num - 1))) == 0) return false;
+			}
+			else if (getGridVerb(noun1, noun2) != Puzzle.IsNot) return false;
 		}
 		return true;
 	}
@@ -739,13 +1539,41 @@ public final class Solver extends Base implements ISolver, Runnable {
 
 	// <editor-fold defaultstate="collapsed" desc="Calls to IViewer methods">
 
+	/** Events the Viewer wants, as the sum of the IViewer.SAY constants. */
+	private final int viewerMask;
+
+	/** True if the Viewer wants the messages. Otherwise the messages are not built, and null is passed instead. */
+	private final boolean okText;
+
+	/**
+	 * Returns true if the Viewer wants the messages. Called by the Finder and the Lawyer before they build<br>
+	 * the message for sayLevel or sayLawViolation, which may be null otherwise.
+	 * @return True if the messages are wanted.
+	 */
+	boolean isTextWanted() {
+		return okText;
+	}
+
+	/**
+	 * Returns true if the event must be given to the Viewer, either because the Viewer wants it or the Solver may pause on it.<br>
+	 * Checked before the message is built, so an unwanted event costs one test.
+	 * @param bit IViewer.SAY constant of the event.
+	 * @return True if the event is wanted.
+	 */
+	private boolean isWanted(final int bit) {
+		return ((viewerMask | spots.pauseMask) & bit) != 0 || spots.okPauseNext;
+	}
+
 	/**
 	 * Updates UI when the solver begins. Called by doFinder.
 	 * @param msg Message.
 	 */
 	private void sayStarted(final String msg) {
+		if (headless) return;
+		boolean pause = spots.sayStarted(msg);
+		int ticket = getTicket(pause);
 		viewer.sayStarted(msg);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -753,8 +1581,11 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param msg Message.
 	 */
 	private void sayStopped(final String msg) {
+		if (headless) return;
+		boolean pause = spots.sayStopped();
+		int ticket = getTicket(pause);
 		viewer.sayStopped(msg);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -762,29 +1593,45 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param msg Message.
 	 */
 	void sayLevel(final String msg) {
-		viewer.sayLevel(msg);
-		doPause();
+		if (headless || !isWanted(IViewer.SAY_LEVEL)) return;
+		boolean pause = spots.sayLevel();
+		int ticket = getTicket(pause);
+		viewer.sayLevel(okText ? msg : null);
+		doPause(pause, ticket);
 	}
 
 	/** Updates UI when a solution is found. Called by addMark. */
 	private void saySolution() {
 		//print("solver.saySolution isAnswer=" + puzzle.isAnswer());
 		++numSolutions;
+		metrics.solution(numSolutions);
+		if (headless) {
+			result.solutions.add(getSolution());
+			if (maxSolutions > 0 && numSolutions >= maxSolutions) quitFlag = true;
+			return;
+		}
+		if (!isWanted(IViewer.SAY_SOLUTION)) return;
 		Date time2 = new Date();
-		String msg = "I have " + (numSolutions == 1 ? "a solution" : numSolutions + " solutions") + " at " + formatDT(time2) + " in " + getMsgElapsedTime(time1, time2);
+		String msg = !okText ? null : "I have " + (numSolutions == 1 ? "a solution" : numSolutions + " solutions") + " at " + formatDT(time2) + " in " + getMsgElapsedTime(time1, time2);
+		boolean pause = spots.saySolution();
+		int ticket = getTicket(pause);
 		viewer.saySolution(msg);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
 	 * Updates UI when a mark is entered. Called by addMark.
-	 * @param msg Message.
 	 * @param mark Mark.
 	 */
-	private void sayAddMark(final String msg, final Mark mark) {
+	private void sayAddMark(final Mark mark) {
 		stats.update(mark, 1);
+		metrics.markAdded(mark);
+		if (headless || !isWanted(IViewer.SAY_ADD_MARK)) return;
+		String msg = okText ? getMarkText(mark) : null;
+		boolean pause = spots.sayAddMark(mark);
+		int ticket = getTicket(pause);
 		viewer.sayAddMark(msg, mark);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -794,10 +1641,17 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 */
 	private void sayRemoveMark(final Mark mark) {
 		stats.update(mark, -1);
-		String msg = "I removed mark " + mark.num + ".";
-		if (mark.hasPlacers()) msg += NL + mark.getResetPlacersMsg();
+		metrics.markRemoved(mark);
+		if (headless || !isWanted(IViewer.SAY_REMOVE_MARK)) return;
+		String msg = null;
+		if (okText) {
+			msg = "I removed mark " + mark.num + ".";
+			if (mark.hasPlacers()) msg += NL + mark.getResetPlacersMsg();
+		}
+		boolean pause = spots.sayRemoveMark(mark);
+		int ticket = getTicket(pause);
 		viewer.sayRemoveMark(msg, mark);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -806,9 +1660,12 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param mark Mark.
 	 */
 	void sayValidMark(final Mark mark) {
-		String msg = "I validated mark " + mark.num + ".";
+		if (headless || !isWanted(IViewer.SAY_VALID_MARK)) return;
+		String msg = okText ? "I validated mark " + mark.num + "." : null;
+		boolean pause = spots.sayValidMark();
+		int ticket = getTicket(pause);
 		viewer.sayValidMark(msg, mark);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -816,8 +1673,11 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param msg Message.
 	 */
 	private void sayContradiction(final String msg) {
+		if (headless || !isWanted(IViewer.SAY_CONTRADICTION)) return;
+		boolean pause = spots.sayContradiction();
+		int ticket = getTicket(pause);
 		viewer.sayContradiction(msg);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -829,11 +1689,15 @@ public final class Solver extends Base implements ISolver, Runnable {
 		++fact.hits;
 		if (fact.hits == 1) ++numFacts;
 		++numFactHits;
-		String msg = mark.name + NL + "Mark " + mark.num + " violates fact " + fact.num + "!" + NL + fact.name;
-		viewer.sayFactViolation(msg, mark, fact);
-		doPause();
-
+		metrics.factViolation(mark, fact);
 		if (mark.levelNum < MAX_LEVELS) quitFlag = true;
+		if (headless || !isWanted(IViewer.SAY_FACT_VIOLATION)) return;
+
+		String msg = !okText ? null : getMarkText(mark) + NL + "Mark " + mark.num + " violates fact " + fact.num + "!" + NL + fact.name;
+		boolean pause = spots.sayFactViolation();
+		int ticket = getTicket(pause);
+		viewer.sayFactViolation(msg, mark, fact);
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -845,9 +1709,13 @@ public final class Solver extends Base implements ISolver, Runnable {
 		++rule.hits;
 		if (rule.hits == 1) ++numRules;
 		++numRuleHits;
-		String msg = "Mark " + mark.num + " violates rule " + rule.num + "!";
+		metrics.ruleViolation(mark, rule);
+		if (headless || !isWanted(IViewer.SAY_RULE_VIOLATION)) return;
+		String msg = okText ? "Mark " + mark.num + " violates rule " + rule.num + "!" : null;
+		boolean pause = spots.sayRuleViolation();
+		int ticket = getTicket(pause);
 		viewer.sayRuleViolation(msg, mark, rule);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -856,8 +1724,12 @@ public final class Solver extends Base implements ISolver, Runnable {
 	 * @param mark Mark that violated the law.
 	 */
 	void sayLawViolation(final String msg, final Mark mark) {
-		viewer.sayLawViolation(msg, mark);
-		doPause();
+		metrics.lawViolation(mark);
+		if (headless || !isWanted(IViewer.SAY_LAW_VIOLATION)) return;
+		boolean pause = spots.sayLawViolation();
+		int ticket = getTicket(pause);
+		viewer.sayLawViolation(okText ? msg : null, mark);
+		doPause(pause, ticket);
 	}
 
 	/**
@@ -871,9 +1743,12 @@ public final class Solver extends Base implements ISolver, Runnable {
 		++rule.hits;
 		if (rule.hits == 1) ++numRules;
 		++numRuleHits;
-		String msg = mark.getRulePlacersMsg(rule);
+		if (headless || !isWanted(IViewer.SAY_PLACERS)) return;
+		String msg = okText ? mark.getRulePlacersMsg(rule) : null;
+		boolean pause = spots.sayPlacers();
+		int ticket = getTicket(pause);
 		viewer.sayPlacers(msg, mark, rule);
-		doPause();
+		doPause(pause, ticket);
 	}
 
 	// </editor-fold>
@@ -0,0 +1,413 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Fact;
+import com.mysterymaster.puzzle.Link;
+import com.mysterymaster.puzzle.Mark;
+import com.mysterymaster.puzzle.Noun;
+import com.mysterymaster.puzzle.NounType;
+import com.mysterymaster.puzzle.Puzzle;
+import com.mysterymaster.puzzle.Rule;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SolverCache class remembers the result of solving a puzzle, so solving the same puzzle again is a lookup.<br>
+ * A puzzle is identified by its fingerprint, which is a SHA-256 hash of the structure of its nouns, links, facts, and rules,<br>
+ * and of the Spots that shape the result, so the same puzzle solved with other options is another entry.<br>
+ * The least recently used results are evicted once the cache is full. If a directory is given, each result is<br>
+ * also written to a file named after the fingerprint, and a result missing from memory is read from its file.<br>
+ * Note: The results are shared, so the caller must not change them. Each method is synchronized, and so the cache<br>
+ * may be shared by the workers of a SolverPool.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class SolverCache extends Base {
+	/** Version of the file format. Files with another version are ignored. */
+	private static final int FILE_VERSION = 2;
+
+	/** Maximum number of results in memory. */
+	public final int maxEntries;
+
+	/** Directory of the files, or null if the results are only kept in memory. */
+	private final Path dir;
+
+	/** True if the trace of each solve is recorded. */
+	private final boolean okTrace;
+
+	/** Results in memory in access order, so the first entry is the least recently used. */
+	private final LinkedHashMap<String, SolveResult> results;
+
+	/** Number of lookups found in memory or on disk. */
+	private long numHits = 0;
+
+	/** Number of lookups that needed a solve. */
+	private long numMisses = 0;
+
+	@Override
+	public String toString() {
+		return "SolverCache";
+	}
+
+	@Override
+	public String asString() {
+		return "maxEntries=" + maxEntries + " numEntries=" + results.size() + " numHits=" + numHits + " numMisses=" + numMisses;
+	}
+
+	/**
+	 * Constructor for a cache in memory that does not record traces.
+	 * @param maxEntries Maximum number of results in memory.
+	 */
+	public SolverCache(final int maxEntries) {
+		this(maxEntries, null, false);
+	}
+
+	/**
+	 * Constructor.
+	 * @param maxEntries Maximum number of results in memory.
+	 * @param dir Directory of the files, or null for none. The directory is created if needed.
+	 * @param okTrace True to record the trace of each solve. See Recorder.
+	 */
+	public SolverCache(final int maxEntries, final Path dir, final boolean okTrace) {
+		this.maxEntries = maxEntries;
+		this.dir = dir;
+		this.okTrace = okTrace;
+		results = new LinkedHashMap<String, SolveResult>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, SolveResult> eldest) {
+				return size() > SolverCache.this.maxEntries;
+			}
+		};
+		if (dir != null) {
+			try {
+				Files.createDirectories(dir);
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("The cache directory \"" + dir + "\" cannot be created.", e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the result for the puzzle, solving the puzzle only if it is not in the cache.<br>
+	 * Note: If the puzzle is solved, the solver runs in the current thread, as it does for solver.solve.
+	 * @param solver Solver.
+	 * @param puzzle Puzzle.
+	 * @return Result of the solve.
+	 */
+	public SolveResult solve(final Solver solver, final Puzzle puzzle) {
+		String key = getFingerprint(puzzle, solver.spots, solver.maxSolutions);
+		SolveResult result = get(key);
+		if (result != null) return result;
+
+		if (okTrace) {
+			// The recorder is added to the listener of the caller, so its metrics still see this solve.
+			IMetrics oldMetrics = solver.getMetrics();
+			Recorder recorder = new Recorder(1024);
+			solver.setMetrics(oldMetrics == IMetrics.NONE ? recorder : new Tee(oldMetrics, recorder));
+			try {
+				result = solver.solve(puzzle);
+			}
+			finally {
+				solver.setMetrics(oldMetrics);
+			}
+			ByteBuffer trace = recorder.getTrace();
+			result.trace = new byte[trace.remaining()];
+			trace.get(result.trace);
+		}
+		else {
+			result = solver.solve(puzzle);
+		}
+
+		put(key, result);
+		return result;
+	}
+
+	/**
+	 * Returns the result for the fingerprint from memory or from disk, or null if there is none.<br>
+	 * The file is read outside the lock, so other threads are not held up by the disk.
+	 * @param key Fingerprint.
+	 * @return Result, or null.
+	 */
+	public SolveResult get(final String key) {
+		SolveResult result;
+		synchronized (this) {
+			result = results.get(key);
+			if (result != null || dir == null) {
+				if (result == null) ++numMisses; else ++numHits;
+				return result;
+			}
+		}
+
+		result = readResult(dir.resolve(key));
+
+		synchronized (this) {
+			if (result == null) {
+				++numMisses;
+			}
+			else {
+				++numHits;
+				results.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Puts the result for the fingerprint in memory and on disk.<br>
+	 * The file is written outside the lock, so other threads are not held up by the disk.
+	 * @param key Fingerprint.
+	 * @param result Result.
+	 */
+	public void put(final String key, final SolveResult result) {
+		synchronized (this) {
+			results.put(key, result);
+		}
+		if (dir != null) writeResult(dir, key, result);
+	}
+
+	/** Removes the results from memory. The files are kept. */
+	public synchronized void clear() {
+		results.clear();
+		numHits = 0;
+		numMisses = 0;
+	}
+
+	/**
+	 * Returns the number of lookups found in memory or on disk.
+	 * @return Number of hits.
+	 */
+	public synchronized long getNumHits() {
+		return numHits;
+	}
+
+	/**
+	 * Returns the number of lookups that needed a solve.
+	 * @return Number of misses.
+	 */
+	public synchronized long getNumMisses() {
+		return numMisses;
+	}
+
+	/**
+	 * Returns the fingerprint of the puzzle solved with the Spots as 64 hexadecimal digits.<br>
+	 * The hash covers what the Solver reads: the number of nouns of each noun type, the relation of each link<br>
+	 * as the verb for every pair of nouns, the nouns, verb, and link of each fact, and the class and nouns of each rule.<br>
+	 * Names are not included, since they do not change the solutions. The state of a solve does not change the fingerprint.<br>
+	 * The hash also covers the Spots that change the result: the rules, triggers, fill, and adaptive options,<br>
+	 * and the level and law options, along with the maximum number of solutions.
+	 * @param puzzle Puzzle.
+	 * @param spots Spots of the Solver.
+	 * @param maxSolutions Maximum number of solutions, or zero for no limit.
+	 * @return Fingerprint.
+	 */
+	public static String getFingerprint(final Puzzle puzzle, final Spots spots, final int maxSolutions) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available.", e);
+		}
+
+		update(md, 'S', spots.okRules ? 1 : 0, spots.okTriggers ? 1 : 0, spots.okFillGrids ? 1 : 0, spots.okAdaptive ? 1 : 0, maxSolutions);
+		for (boolean ok : spots.okLevels) md.update((byte) (ok ? 1 : 0));
+		for (boolean ok : spots.okLaws) md.update((byte) (ok ? 1 : 0));
+
+		update(md, 'P', puzzle.getClass().getName());
+		for (NounType nounType : puzzle.nounTypes) update(md, 'T', nounType.num, nounType.nouns.size());
+
+		for (Link link : puzzle.links) {
+			NounType nounType = link.nounType;
+			update(md, 'L', nounType.num, nounType.nouns.size());
+			for (Noun noun1 : nounType.nouns) {
+				for (Noun noun2 : nounType.nouns) md.update((byte) link.getVerb(noun1, noun2).num);
+			}
+		}
+
+		for (Fact fact : puzzle.facts) {
+			update(md, 'F', fact.noun1.type.num, fact.noun1.num, fact.verb.num, puzzle.links.indexOf(fact.link), fact.noun2.type.num, fact.noun2.num);
+		}
+
+		for (Rule rule : puzzle.rules) {
+			update(md, 'R', rule.getClass().getName());
+			for (Noun noun : rule.nouns) update(md, 'N', noun.type.num, noun.num);
+		}
+
+		StringBuilder sb = new StringBuilder(64);
+		for (byte b : md.digest()) sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * Adds the tagged text to the digest. The tag and the length keep the fields of the puzzle apart.
+	 * @param md Digest.
+	 * @param tag Tag.
+	 * @param text Text.
+	 */
+	private static void update(final MessageDigest md, final char tag, final String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		md.update((byte) tag);
+		md.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+		md.update(bytes);
+	}
+
+	/**
+	 * Adds the tagged numbers to the digest. The tag and the count keep the fields of the puzzle apart.
+	 * @param md Digest.
+	 * @param tag Tag.
+	 * @param nums Numbers.
+	 */
+	private static void update(final MessageDigest md, final char tag, final int... nums) {
+		ByteBuffer bb = ByteBuffer.allocate(4 * (nums.length + 1));
+		bb.putInt(nums.length);
+		for (int num : nums) bb.putInt(num);
+		md.update((byte) tag);
+		md.update(bb.array());
+	}
+
+	/**
+	 * Writes the result to the file. The file is written to a temporary file of its own first, and then moved,<br>
+	 * so two threads writing the same result do not clash.<br>
+	 * Note: A file that cannot be written is ignored, since the result is still in memory.
+	 * @param dir Directory of the files.
+	 * @param key Fingerprint, which is the name of the file.
+	 * @param result Result.
+	 */
+	private static void writeResult(final Path dir, final String key, final SolveResult result) {
+		Path path = dir.resolve(key);
+		Path tmp;
+		try {
+			tmp = Files.createTempFile(dir, key, ".tmp");
+		}
+		catch (IOException e) {
+			return;
+		}
+		try (OutputStream os = Files.newOutputStream(tmp); DataOutputStream out = new DataOutputStream(os)) {
+			out.writeInt(FILE_VERSION);
+			out.writeInt(result.rs);
+			out.writeInt(result.numSolutions);
+			out.writeInt(result.numMarks);
+			out.writeInt(result.numPairs);
+			out.writeInt(result.numGuesses);
+			out.writeLong(result.elapsedTime);
+			writeInts(out, result.markCounts);
+			writeInts(out, result.pairCounts);
+			out.writeInt(result.solutions.size());
+			for (int[] solution : result.solutions) writeInts(out, solution);
+			out.writeInt(result.trace == null ? -1 : result.trace.length);
+			if (result.trace != null) out.write(result.trace);
+		}
+		catch (IOException e) {
+			try { Files.deleteIfExists(tmp); } catch (IOException e2) { }
+			return;
+		}
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			try { Files.deleteIfExists(tmp); } catch (IOException e2) { }
+		}
+	}
+
+	/**
+	 * Returns the result read from the file, or null if the file does not exist or cannot be read.
+	 * @param path Path of the file.
+	 * @return Result, or null.
+	 */
+	private static SolveResult readResult(final Path path) {
+		if (!Files.isRegularFile(path)) return null;
+		try (InputStream is = Files.newInputStream(path); DataInputStream in = new DataInputStream(is)) {
+			if (in.readInt() != FILE_VERSION) return null;
+			SolveResult result = new SolveResult();
+			result.rs = in.readInt();
+			result.numSolutions = in.readInt();
+			result.numMarks = in.readInt();
+			result.numPairs = in.readInt();
+			result.numGuesses = in.readInt();
+			result.elapsedTime = in.readLong();
+			result.markCounts = readInts(in);
+			result.pairCounts = readInts(in);
+			int n = in.readInt();
+			for (int i = 0; i < n; i++) result.solutions.add(readInts(in));
+			int len = in.readInt();
+			if (len >= 0) {
+				result.trace = new byte[len];
+				in.readFully(result.trace);
+			}
+			return result;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the length of the array, or -1 for null, followed by its elements.
+	 * @param out Output stream.
+	 * @param a Array, or null.
+	 */
+	private static void writeInts(final DataOutputStream out, final int[] a) throws IOException {
+		out.writeInt(a == null ? -1 : a.length);
+		if (a != null) for (int x : a) out.writeInt(x);
+	}
+
+	/**
+	 * Returns the array written by writeInts.
+	 * @param in Input stream.
+	 * @return Array, or null.
+	 */
+	private static int[] readInts(final DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) return null;
+		int[] a = new int[n];
+		for (int i = 0; i < n; i++) a[i] = in.readInt();
+		return a;
+	}
+
+	/** The Tee class passes each event to two metrics listeners. Used to record a trace without losing the metrics of the caller. */
+	private static final class Tee implements IMetrics {
+		/** First listener. */
+		private final IMetrics a;
+
+		/** Second listener. */
+		private final IMetrics b;
+
+		/**
+		 * Constructor.
+		 * @param a First listener.
+		 * @param b Second listener.
+		 */
+		Tee(final IMetrics a, final IMetrics b) {
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override public boolean isTimed() { return a.isTimed() || b.isTimed(); }
+		@Override public void markAdded(Mark mark) { a.markAdded(mark); b.markAdded(mark); }
+		@Override public void markRemoved(Mark mark) { a.markRemoved(mark); b.markRemoved(mark); }
+		@Override public void markValidated(Mark mark, long nanos) { a.markValidated(mark, nanos); b.markValidated(mark, nanos); }
+		@Override public void agendaDone(int numMarks) { a.agendaDone(numMarks); b.agendaDone(numMarks); }
+		@Override public void contradiction(Mark oldMark) { a.contradiction(oldMark); b.contradiction(oldMark); }
+		@Override public void factViolation(Mark mark, Fact fact) { a.factViolation(mark, fact); b.factViolation(mark, fact); }
+		@Override public void ruleViolation(Mark mark, Rule rule) { a.ruleViolation(mark, rule); b.ruleViolation(mark, rule); }
+		@Override public void lawViolation(Mark mark) { a.lawViolation(mark); b.lawViolation(mark); }
+		@Override public void solution(int numSolutions) { a.solution(numSolutions); b.solution(numSolutions); }
+		@Override public void lawDone(Mark mark, int lawNum, long nanos, int newMarks) { a.lawDone(mark, lawNum, nanos, newMarks); b.lawDone(mark, lawNum, nanos, newMarks); }
+		@Override public void ruleDone(Mark mark, Rule rule, long nanos) { a.ruleDone(mark, rule, nanos); b.ruleDone(mark, rule, nanos); }
+	}
+}
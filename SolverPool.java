@@ -0,0 +1,145 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.Puzzle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SolverPool class solves many puzzles at the same time using a pool of worker threads.<br>
+ * Each worker has its own Solver (and so its own Finder and Lawyer), which is reused for every puzzle.<br>
+ * The puzzles are solved via solver.solve, so the Viewer is only called for jot messages.<br>
+ * Note: A puzzle must not be submitted again until it has been solved, since the solver updates it.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+public class SolverPool extends Base {
+	/** Executor that runs the workers. */
+	private final ExecutorService executor;
+
+	/** Solver for each worker thread. Instantiated the first time the worker solves a puzzle. */
+	private final ThreadLocal<Solver> solvers;
+
+	/** Number of workers. */
+	public final int numWorkers;
+
+	/** Number of puzzles solved. */
+	private final AtomicLong numPuzzles = new AtomicLong();
+
+	/** Sum of the latencies in nanoseconds of the puzzles solved. */
+	private final AtomicLong sumLatency = new AtomicLong();
+
+	/** Time in nanoseconds when the pool was created. */
+	private final long time1 = System.nanoTime();
+
+	@Override
+	public String toString() {
+		return "SolverPool";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/**
+	 * Constructor with one worker per available processor.
+	 * @param viewer Viewer, which must be thread-safe since all workers share it.
+	 * @param spots Spots, which all workers share.
+	 */
+	public SolverPool(final IViewer viewer, final Spots spots) {
+		this(viewer, spots, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor.
+	 * @param viewer Viewer, which must be thread-safe since all workers share it.
+	 * @param spots Spots, which all workers share.
+	 * @param numWorkers Number of workers.
+	 */
+	public SolverPool(final IViewer viewer, final Spots spots, final int numWorkers) {
+		this.numWorkers = numWorkers;
+		executor = Executors.newFixedThreadPool(numWorkers);
+		solvers = ThreadLocal.withInitial(() -> new Solver(viewer, spots));
+	}
+
+	/**
+	 * Submits the puzzle to be solved by the next free worker.
+	 * @param puzzle Puzzle.
+	 * @return Future result of the solve, where the latency includes the time spent waiting for a worker.
+	 */
+	public Future<SolveResult> submit(final Puzzle puzzle) {
+		return submit(puzzle, 0);
+	}
+
+	/**
+	 * Submits the puzzle to have its solutions enumerated by the next free worker. See solver.enumerate.
+	 * @param puzzle Puzzle.
+	 * @param limit Maximum number of solutions, or zero for all solutions.
+	 * @return Future result of the solve, where the latency includes the time spent waiting for a worker.
+	 */
+	public Future<SolveResult> submit(final Puzzle puzzle, final int limit) {
+		final long submitTime = System.nanoTime();
+		return executor.submit(() -> {
+			SolveResult result = solvers.get().enumerate(puzzle, limit);
+			result.latency = System.nanoTime() - submitTime;
+			numPuzzles.incrementAndGet();
+			sumLatency.addAndGet(result.latency);
+			return result;
+		});
+	}
+
+	/**
+	 * Solves all of the puzzles, and waits for them to be solved. For a stream, pass stream::iterator.
+	 * @param puzzles Puzzles.
+	 * @return List of results in the same order as the puzzles.
+	 * @throws InterruptedException If interrupted while waiting.
+	 * @throws ExecutionException If a solve threw an exception.
+	 */
+	public List<SolveResult> solveAll(final Iterable<? extends Puzzle> puzzles) throws InterruptedException, ExecutionException {
+		List<Future<SolveResult>> futures = new ArrayList<>();
+		for (Puzzle puzzle : puzzles) futures.add(submit(puzzle));
+
+		List<SolveResult> results = new ArrayList<>(futures.size());
+		for (Future<SolveResult> future : futures) results.add(future.get());
+		return results;
+	}
+
+	/**
+	 * Returns the number of puzzles solved.
+	 * @return Number of puzzles.
+	 */
+	public long getNumPuzzles() {
+		return numPuzzles.get();
+	}
+
+	/**
+	 * Returns the number of puzzles solved per second since the pool was created.
+	 * @return Puzzles per second.
+	 */
+	public double getThroughput() {
+		long elapsedTime = System.nanoTime() - time1;
+		return (elapsedTime == 0) ? 0 : numPuzzles.get() * 1e9 / elapsedTime;
+	}
+
+	/**
+	 * Returns the mean latency in milliseconds of the puzzles solved.
+	 * @return Mean latency.
+	 */
+	public double getMeanLatency() {
+		long n = numPuzzles.get();
+		return (n == 0) ? 0 : sumLatency.get() / 1e6 / n;
+	}
+
+	/** Stops the workers after the submitted puzzles are solved. */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -7,37 +7,44 @@ import com.mysterymaster.puzzle.Mark;
 /**
  * The Spots class defines solve options (aka spots) set by the user in the Setup and Board forms.<br>
  * Note: The okPauseNext is set when then user clicks the Pause button.<br>
+ * Note: The pause flags are volatile, since the Viewer sets them while the Solver thread reads them.<br>
  * Copyright (c) 2018 mysterymaster.com. All rights reserved.
  * @version 2018-05-15
  * @author Michael Benson <michael.benson@mysterymaster.com>
  */
 public class Spots {
 	/** Pause on all events. Setup option for the Viewer. */
-	private boolean okPauseAll = false;
+	private volatile boolean okPauseAll = false;
 
 	/** Pause when the level changes. Setup option for the Viewer. */
-	private boolean okPauseLevel = false;
+	private volatile boolean okPauseLevel = false;
 
 	/** Pause when a solution is found. Setup option for the Viewer. */
-	private boolean okPauseSolution = true;
+	private volatile boolean okPauseSolution = true;
 
 	/** Pause when a violation occurs. Setup option for the Viewer. */
-	private boolean okPauseViolation = false;
+	private volatile boolean okPauseViolation = false;
 
 	/** Pause when a mark is entered. Setup option for the Viewer. */
-	private boolean okPauseMark = false;
+	private volatile boolean okPauseMark = false;
 
 	/** Pause when a mark is entered via a rule (aka trigger). Setup option for the Viewer. */
-	private boolean okPauseTrigger = false;
+	private volatile boolean okPauseTrigger = false;
 
 	/** Pause when an assumption is made. Setup option for the Viewer. */
-	private boolean okPauseGuess = false;
+	private volatile boolean okPauseGuess = false;
 
 	/** Pause when the name changes for one or more nouns. Setup option for the Viewer. */
-	private boolean okPausePlacers = false;
+	private volatile boolean okPausePlacers = false;
 
 	/** Pause when the next opportunity arises. Set to true by viewer.doPause. Set to false by viewer.sayWait. */
-	public boolean okPauseNext = false;
+	public volatile boolean okPauseNext = false;
+
+	/**
+	 * Events that may pause the Solver, as the sum of the IViewer.SAY constants. The okPauseNext flag is not included.<br>
+	 * Updated by the constructor and setValue.
+	 */
+	public volatile int pauseMask = 0;
 
 	/** Auto-run puzzle when page is loaded. Setup option for the Viewer. */
 	public boolean okAutorun = false;
@@ -54,6 +61,12 @@ public class Spots {
 	/** Allow marks via rules. Setup option for the Solver. */
 	public boolean okTriggers = true;
 
+	/** Fill the remaining cells in bulk once every noun is paired. Setup option for the Solver. */
+	public boolean okFillGrids = false;
+
+	/** Order the laws by how many marks they produce per nanosecond. Setup option for the Solver. */
+	public boolean okAdaptive = false;
+
 	/** Allow level flags. Allocate one extra because flag[0] is for all levels. Setup option for the Solver. */
 	public final boolean[] okLevels = new boolean[MAX_LEVELS + 1];
 
@@ -85,6 +98,8 @@ public class Spots {
 		okRechart  = locker.getBoolean("okRechart" , okRechart);
 		okRules    = locker.getBoolean("okRules"   , okRules);
 		okTriggers = locker.getBoolean("okTriggers", okTriggers);
+		okFillGrids = locker.getBoolean("okFillGrids", okFillGrids);
+		okAdaptive = locker.getBoolean("okAdaptive", okAdaptive);
 		
 		// Levels.
 		boolean ok = true;
@@ -98,6 +113,21 @@ public class Spots {
 			String key = "okLaw" + i;
 			okLaws[i] = locker.getBoolean(key, ok);
 		}
+
+		setPauseMask();
+	}
+
+	/** Updates the pause mask from the pause flags. Called by the constructor and setValue. */
+	private void setPauseMask() {
+		int mask = 0;
+		if (okPauseAll) mask |= IViewer.SAY_ALL;
+		if (okPauseLevel) mask |= IViewer.SAY_LEVEL;
+		if (okPauseSolution) mask |= IViewer.SAY_SOLUTION;
+		if (okPauseViolation) mask |= IViewer.SAY_CONTRADICTION | IViewer.SAY_FACT_VIOLATION | IViewer.SAY_RULE_VIOLATION | IViewer.SAY_LAW_VIOLATION;
+		if (okPauseMark) mask |= IViewer.SAY_ADD_MARK | IViewer.SAY_REMOVE_MARK | IViewer.SAY_VALID_MARK;
+		if (okPauseTrigger || okPauseGuess) mask |= IViewer.SAY_ADD_MARK;
+		if (okPausePlacers) mask |= IViewer.SAY_REMOVE_MARK | IViewer.SAY_PLACERS;
+		pauseMask = mask;
 	}
 	
 	/**
@@ -124,6 +154,8 @@ public class Spots {
 			case "okShowFab" : okShowFab  = locker.setBoolean(key, val); break;
 			case "okRules"   : okRules    = locker.setBoolean(key, val); break;
 			case "okTriggers": okTriggers = locker.setBoolean(key, val); break;
+			case "okFillGrids": okFillGrids = locker.setBoolean(key, val); break;
+			case "okAdaptive": okAdaptive = locker.setBoolean(key, val); break;
 
 			// Levels.
 			case "okLevels0": okLevels[0] = locker.setBoolean(key, val); break;
@@ -141,6 +173,7 @@ public class Spots {
 			case "okLaws5": okLaws[5] = locker.setBoolean(key, val); break;
 		}
 
+		if (key.startsWith("okPause")) setPauseMask();
 		return val;
 	}
 	
@@ -168,6 +201,8 @@ public class Spots {
 			case "okShowFab" : val = okShowFab;  break;
 			case "okRules"   : val = okRules;    break;
 			case "okTriggers": val = okTriggers; break;
+			case "okFillGrids": val = okFillGrids; break;
+			case "okAdaptive": val = okAdaptive; break;
 
 			// Levels.
 			case "okLevels0": val = okLevels[0]; break;
@@ -1,7 +1,12 @@
 package com.mysterymaster.solver;
 
 import com.mysterymaster.puzzle.Base;
+import com.mysterymaster.puzzle.ISolver;
 import com.mysterymaster.puzzle.Mark;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
 import static com.mysterymaster.puzzle.Mark.Type.Law;
 import static com.mysterymaster.puzzle.Mark.Type.Level;
 import static com.mysterymaster.puzzle.Mark.Type.User;
@@ -10,7 +15,11 @@ import static com.mysterymaster.puzzle.Mark.Type.User;
  * The Stats class defines statistics while a logic puzzle is being solved. Usage:<ol>
  * <li>Instantiate in solver.constructor.</li>
  * <li>Call stats.reset in solver.reset.</li>
- * <li>Call stats.update in solver.sayAddMark and solver.sayRemoveMark.</li></ol>
+ * <li>Call stats.update in solver.sayAddMark and solver.sayRemoveMark.</li>
+ * <li>Call stats.getSnapshot from any thread to read a consistent copy of the counters.</li></ol>
+ * Note: The counters are written by the solver thread only. Each write is bracketed by the version,<br>
+ * which is odd while a write is in progress, so a reader retries instead of locking (a seqlock).<br>
+ * Each write ends the version in a finally block, so a write that throws never leaves readers spinning.
  * Copyright (c) 2018 mysterymaster.com. All rights reserved.
  * @version 2018-05-15
  * @author Michael Benson <michael.benson@mysterymaster.com>
@@ -28,6 +37,36 @@ public class Stats extends Base {
 	/** Totals for pairs. This is the last row in the levelPairs. */
 	private final LevelCounter totalPair;
 
+	/** Version of the counters, which is odd while the counters are being written. Accessed via VERSION. */
+	private int version = 0;
+
+	/** Handle to the version, so the writer pays for ordering only, and not for a full fence per store. */
+	private static final VarHandle VERSION;
+
+	static {
+		try {
+			VERSION = MethodHandles.lookup().findVarHandle(Stats.class, "version", int.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** Time the Lawyer. Set by the Viewer or a batch application. Read by solver.propagate and solver.isLawTimed. */
+	public boolean okTiming = false;
+
+	/** Time in nanoseconds the Lawyer spent running each rule, where index 0 is rule 1. */
+	private long[] ruleNanos = new long[0];
+
+	/** Number of times the Lawyer ran each rule, where index 0 is rule 1. */
+	private int[] ruleCalls = new int[0];
+
+	/** Time in nanoseconds the Lawyer spent running each law, where index 0 is law 1. Never decreases. */
+	private final long[] lawNanos = new long[ISolver.MAX_LAWS];
+
+	/** Number of marks entered by each law when it ran, where index 0 is law 1. Unlike marksByLaw, undo does not subtract. */
+	private final long[] lawMarks = new long[ISolver.MAX_LAWS];
+
 	@Override
 	public String toString() {
 		return "Stats";
@@ -50,8 +89,27 @@ public class Stats extends Base {
 
 	/** Resets the counters for the marks and pairs. Called by viewer.reset. */
 	public void reset() {
-		reset(levelPairs);
-		reset(levelMarks);
+		beginWrite();
+		try {
+			reset(levelPairs);
+			reset(levelMarks);
+			for (int i = 0; i < ruleNanos.length; i++) { ruleNanos[i] = 0; ruleCalls[i] = 0; }
+			for (int i = 0; i < lawNanos.length; i++) { lawNanos[i] = 0; lawMarks[i] = 0; }
+		}
+		finally {
+			endWrite();
+		}
+	}
+
+	/** Marks the start of a write by making the version odd. The fence keeps the counters after the odd version. */
+	private void beginWrite() {
+		VERSION.setOpaque(this, version + 1);
+		VarHandle.storeStoreFence();
+	}
+
+	/** Marks the end of a write by making the version even. The release keeps the counters before the even version. */
+	private void endWrite() {
+		VERSION.setRelease(this, version + 1);
 	}
 
 	/**
@@ -70,53 +128,353 @@ public class Stats extends Base {
 	 */
 	public void update(Mark mark, int d) {
 		//print("stats.update " + mark.num + " d=" + d + " levelNum=" + mark.levelNum + " type=" + Q + mark.type.name + Q);
+		int levelNum = mark.levelNum;
+		if (levelNum < 1) return;
+		beginWrite();
+		try {
+			LevelCounter levelMark = levelMarks[levelNum - 1];
+			LevelCounter levelPair = levelPairs[levelNum - 1];
+
+			// Checks if the verb is positive using its number.
+			boolean isPositive = mark.verb.num > 0;
+
+			// Update sums for the specific level and in total.
+			levelMark.sum += d;
+			totalMark.sum += d;
+			if (isPositive) {
+				levelPair.sum += d;
+				totalPair.sum += d;
+			}
+
+			// Update counters for the type of mark: Level or User, Rule, or Law.
+			switch (mark.type) {
+				case Level:
+				case User:
+					levelMark.marksByLevel += d;
+					totalMark.marksByLevel += d;
+					if (isPositive) {
+						levelPair.marksByLevel += d;
+						totalPair.marksByLevel += d;
+					}
+					break;
+				case Rule:
+					levelMark.marksByRule += d;
+					totalMark.marksByRule += d;
+					if (isPositive) {
+						levelPair.marksByRule += d;
+						totalPair.marksByRule += d;
+					}
+					break;
+				case Law:
+					int j = mark.refNum - 1;
+					levelMark.marksByLaw[j] += d;
+					totalMark.marksByLaw[j] += d;
+					if (isPositive) {
+						levelPair.marksByLaw[j] += d;
+						totalPair.marksByLaw[j] += d;
+					}
+					break;
+				default:
+					print("stats.updateMark bad mark.type!");
+			}
+		}
+		finally {
+			endWrite();
+		}
+	}
+
+	/**
+	 * Adds the time the Lawyer spent running the law on the mark to the row of the level of the mark and to the totals.<br>
+	 * Also adds to the running totals used by sortLaws. Called by solver.lawDone.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param lawNum One-based law number.
+	 * @param t Time in nanoseconds.
+	 * @param newMarks Number of marks the law entered.
+	 */
+	public void timeLaw(Mark mark, int lawNum, long t, int newMarks) {
+		lawNanos[lawNum - 1] += t;
+		lawMarks[lawNum - 1] += newMarks;
+
 		int levelNum = mark.levelNum;
 		if (levelNum < 1) return;
 
-		LevelCounter levelMark = levelMarks[levelNum - 1];
-		LevelCounter levelPair = levelPairs[levelNum - 1];
+		beginWrite();
+		try {
+			levelMarks[levelNum - 1].addTime(2 + lawNum - 1, t);
+			totalMark.addTime(2 + lawNum - 1, t);
+		}
+		finally {
+			endWrite();
+		}
+	}
 
-		// Checks if the verb is positive using its number.
-		boolean isPositive = mark.verb.num > 0;
+	/**
+	 * Adds the time the Lawyer spent running the rule on the mark to the row of the level of the mark and to the totals.<br>
+	 * Called by solver.ruleDone.
+	 * @param mark Mark the Lawyer was working on.
+	 * @param ruleNum One-based rule number.
+	 * @param t Time in nanoseconds.
+	 */
+	public void timeRule(Mark mark, int ruleNum, long t) {
+		int levelNum = mark.levelNum;
+		if (levelNum < 1) return;
 
-		// Update sums for the specific level and in total.
-		levelMark.sum += d;
-		totalMark.sum += d;
-		if (isPositive) {
-			levelPair.sum += d;
-			totalPair.sum += d;
+		beginWrite();
+		try {
+			int j = ruleNum - 1;
+			if (j >= ruleNanos.length) {
+				ruleNanos = Arrays.copyOf(ruleNanos, j + 1);
+				ruleCalls = Arrays.copyOf(ruleCalls, j + 1);
+			}
+			ruleNanos[j] += t;
+			++ruleCalls[j];
+			levelMarks[levelNum - 1].addTime(1, t);
+			totalMark.addTime(1, t);
+		}
+		finally {
+			endWrite();
 		}
+	}
+
+	/**
+	 * Adds the validation time, which is the time the Lawyer spent on the mark, to the row of its level and to the totals.<br>
+	 * The column is given by the type of the mark: Level or User, Rule, or Law. Called by solver.propagate.
+	 * @param mark Mark.
+	 * @param t Time in nanoseconds.
+	 */
+	public void timeValidation(Mark mark, long t) {
+		int levelNum = mark.levelNum;
+		if (levelNum < 1) return;
 
-		// Update counters for the type of mark: Level or User, Rule, or Law.
+		int col;
 		switch (mark.type) {
 			case Level:
 			case User:
-				levelMark.marksByLevel += d;
-				totalMark.marksByLevel += d;
-				if (isPositive) {
-					levelPair.marksByLevel += d;
-					totalPair.marksByLevel += d;
-				}
+				col = 0;
 				break;
 			case Rule:
-				levelMark.marksByRule += d;
-				totalMark.marksByRule += d;
-				if (isPositive) {
-					levelPair.marksByRule += d;
-					totalPair.marksByRule += d;
-				}
+				col = 1;
 				break;
 			case Law:
-				int j = mark.refNum - 1;
-				levelMark.marksByLaw[j] += d;
-				totalMark.marksByLaw[j] += d;
-				if (isPositive) {
-					levelPair.marksByLaw[j] += d;
-					totalPair.marksByLaw[j] += d;
-				}
+				col = 2 + mark.refNum - 1;
 				break;
 			default:
-				print("stats.updateMark bad mark.type!");
+				return;
+		}
+
+		beginWrite();
+		try {
+			levelMarks[levelNum - 1].addValidationTime(col, t);
+			totalMark.addValidationTime(col, t);
+		}
+		finally {
+			endWrite();
+		}
+	}
+
+	/**
+	 * Sorts the law numbers so the laws that entered the most marks per nanosecond of running come first.<br>
+	 * Both totals only grow, so undoing marks does not change the order. Laws that have not entered<br>
+	 * any marks come last. Ties keep the order of the law numbers. Called by solver.getLawOrder.
+	 * @param lawNums Array of one-based law numbers, which is sorted in place.
+	 */
+	public void sortLaws(final int[] lawNums) {
+		// Insertion sort, since there are only a few laws.
+		for (int i = 1; i < lawNums.length; i++) {
+			int lawNum = lawNums[i];
+			double score = getLawScore(lawNum);
+			int j = i - 1;
+			while (j >= 0 && (getLawScore(lawNums[j]) < score || (getLawScore(lawNums[j]) == score && lawNums[j] > lawNum))) {
+				lawNums[j + 1] = lawNums[j];
+				j--;
+			}
+			lawNums[j + 1] = lawNum;
+		}
+	}
+
+	/**
+	 * Returns the number of marks entered by the law per nanosecond the Lawyer spent running it.
+	 * @param lawNum One-based law number.
+	 * @return Score, or zero if the law has not entered any marks.
+	 */
+	private double getLawScore(final int lawNum) {
+		long numMarks = lawMarks[lawNum - 1];
+		if (numMarks <= 0) return 0;
+		return numMarks / (double) (lawNanos[lawNum - 1] + 1);
+	}
+
+	/**
+	 * Returns the time in nanoseconds the Lawyer spent running each rule.
+	 * @return Array of times, where index 0 is rule 1.
+	 */
+	public long[] getRuleTimes() {
+		return ruleNanos.clone();
+	}
+
+	/**
+	 * Returns the number of times the Lawyer ran each rule.
+	 * @return Array of counts, where index 0 is rule 1.
+	 */
+	public int[] getRuleCalls() {
+		return ruleCalls.clone();
+	}
+
+	/**
+	 * Returns a consistent copy of the counters. Called by any thread, for example to monitor a solve.<br>
+	 * This never blocks the solver thread. The copy is retried if the counters changed while being copied.
+	 * @return Snapshot.
+	 */
+	public Snapshot getSnapshot() {
+		int nrows = levelMarks.length;
+		while (true) {
+			int v1 = (int) VERSION.getAcquire(this);
+			if ((v1 & 1) != 0) {
+				Thread.yield();
+				continue;
+			}
+			int[][] marks = new int[nrows][];
+			int[][] pairs = new int[nrows][];
+			long[][] times = new long[nrows][];
+			int[][] calls = new int[nrows][];
+			long[][] validTimes = new long[nrows][];
+			int[][] validCalls = new int[nrows][];
+			for (int i = 0; i < nrows; i++) {
+				marks[i] = levelMarks[i].getCounts();
+				pairs[i] = levelPairs[i].getCounts();
+				times[i] = levelMarks[i].getTimes();
+				calls[i] = levelMarks[i].getCalls();
+				validTimes[i] = levelMarks[i].getValidationTimes();
+				validCalls[i] = levelMarks[i].getValidationCalls();
+			}
+			long[] ruleTimes = ruleNanos.clone();
+			int[] ruleCounts = ruleCalls.clone();
+			VarHandle.loadLoadFence();
+			if ((int) VERSION.getAcquire(this) == v1) return new Snapshot(v1 / 2, marks, pairs, times, calls, validTimes, validCalls, ruleTimes, ruleCounts);
+		}
+	}
+
+	/** The Snapshot class is an immutable copy of the counters. See LevelCounter.getCounts for the columns. */
+	public static final class Snapshot {
+		/** Number of writes to the counters before the copy was made. */
+		public final int version;
+
+		/** Counts of the marks for each level, where the last row is for the totals. */
+		private final int[][] marks;
+
+		/** Counts of the pairs for each level, where the last row is for the totals. */
+		private final int[][] pairs;
+
+		/** Times the Lawyer spent running the rules and laws for each level. See LevelCounter.getTimes. */
+		private final long[][] times;
+
+		/** Number of times the Lawyer ran the rules and laws for each level. See LevelCounter.getCalls. */
+		private final int[][] calls;
+
+		/** Validation times for each level. See LevelCounter.getValidationTimes. */
+		private final long[][] validTimes;
+
+		/** Number of marks validated for each level. See LevelCounter.getValidationCalls. */
+		private final int[][] validCalls;
+
+		/** Times the Lawyer spent running each rule. See stats.getRuleTimes. */
+		private final long[] ruleTimes;
+
+		/** Number of times the Lawyer ran each rule. See stats.getRuleCalls. */
+		private final int[] ruleCalls;
+
+		/**
+		 * Constructor. Called by stats.getSnapshot.
+		 * @param version Version.
+		 * @param marks Counts of the marks.
+		 * @param pairs Counts of the pairs.
+		 * @param times Times of the rules and laws.
+		 * @param calls Number of runs of the rules and laws.
+		 * @param validTimes Validation times.
+		 * @param validCalls Number of marks validated.
+		 * @param ruleTimes Times of each rule.
+		 * @param ruleCalls Number of runs of each rule.
+		 */
+		private Snapshot(final int version, final int[][] marks, final int[][] pairs, final long[][] times, final int[][] calls,
+				final long[][] validTimes, final int[][] validCalls, final long[] ruleTimes, final int[] ruleCalls) {
+			this.version = version;
+			this.marks = marks;
+			this.pairs = pairs;
+			this.times = times;
+			this.calls = calls;
+			this.validTimes = validTimes;
+			this.validCalls = validCalls;
+			this.ruleTimes = ruleTimes;
+			this.ruleCalls = ruleCalls;
+		}
+
+		/**
+		 * Returns the counts of the marks for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the counts.
+		 */
+		public int[] getMarkCounts(final int row) {
+			return marks[row].clone();
+		}
+
+		/**
+		 * Returns the counts of the pairs for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the counts.
+		 */
+		public int[] getPairCounts(final int row) {
+			return pairs[row].clone();
+		}
+
+		/**
+		 * Returns the times in nanoseconds the Lawyer spent running the rules and laws for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the times.
+		 */
+		public long[] getTimes(final int row) {
+			return times[row].clone();
+		}
+
+		/**
+		 * Returns the number of times the Lawyer ran the rules and laws for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the counts.
+		 */
+		public int[] getCalls(final int row) {
+			return calls[row].clone();
+		}
+
+		/**
+		 * Returns the validation times in nanoseconds for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the times.
+		 */
+		public long[] getValidationTimes(final int row) {
+			return validTimes[row].clone();
+		}
+
+		/**
+		 * Returns the number of marks validated for the row.
+		 * @param row Zero-based level number, or the number of levels for the totals.
+		 * @return Copy of the counts.
+		 */
+		public int[] getValidationCalls(final int row) {
+			return validCalls[row].clone();
+		}
+
+		/**
+		 * Returns the times in nanoseconds the Lawyer spent running each rule.
+		 * @return Copy of the times, where index 0 is rule 1.
+		 */
+		public long[] getRuleTimes() {
+			return ruleTimes.clone();
+		}
+
+		/**
+		 * Returns the number of times the Lawyer ran each rule.
+		 * @return Copy of the counts, where index 0 is rule 1.
+		 */
+		public int[] getRuleCalls() {
+			return ruleCalls.clone();
 		}
 	}	
 }
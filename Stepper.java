@@ -0,0 +1,81 @@
+package com.mysterymaster.solver;
+
+import com.mysterymaster.puzzle.Base;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Stepper class pauses and resumes the thread that is solving the puzzle. Used by the Solver.<br>
+ * The Viewer resumes the thread via solver.doResume, solver.doStep, or solver.doQuit.<br>
+ * Each pause waits on the ticket taken before the Viewer was called, so a resume is never lost,<br>
+ * even if the Viewer resumes the thread before the thread parks.<br>
+ * Note: Interrupting the thread also resumes it, but an interrupt that arrives when the thread<br>
+ * is not paused will end the next pause early. The Viewer should call solver.doResume instead.<br>
+ * Copyright (c) 2018 mysterymaster.com. All rights reserved.
+ * @version 2018-05-16
+ * @author Michael Benson <michael.benson@mysterymaster.com>
+ */
+final class Stepper extends Base {
+	/** Thread that is solving the puzzle, or null. */
+	private volatile Thread thread = null;
+
+	/** Ticket, which is incremented each time the thread is resumed. */
+	private final AtomicInteger ticket = new AtomicInteger();
+
+	/** Cancel flag. True when the thread must no longer pause. */
+	private volatile boolean cancelled = false;
+
+	@Override
+	public String toString() {
+		return "Stepper";
+	}
+
+	@Override
+	public String asString() {
+		return this.toString();
+	}
+
+	/** Registers the current thread as the thread that may pause. Called by solver.run. */
+	void begin() {
+		cancelled = false;
+		thread = Thread.currentThread();
+	}
+
+	/** Unregisters the thread. Called by solver.run. */
+	void end() {
+		thread = null;
+	}
+
+	/**
+	 * Returns the current ticket. Called by the Solver before it calls the Viewer.
+	 * @return Ticket.
+	 */
+	int getTicket() {
+		return ticket.get();
+	}
+
+	/**
+	 * Parks the current thread until it is resumed after the given ticket was taken, or cancelled.
+	 * @param t Ticket taken before the Viewer was called.
+	 */
+	void pause(final int t) {
+		while (ticket.get() == t && !cancelled) {
+			LockSupport.park(this);
+			if (Thread.interrupted()) break;
+		}
+	}
+
+	/** Resumes the thread. Called by solver.doResume, solver.doStep. */
+	void resume() {
+		ticket.incrementAndGet();
+		Thread t = thread;
+		if (t != null) LockSupport.unpark(t);
+	}
+
+	/** Resumes the thread, and does not let it pause again until the next begin. Called by solver.doQuit. */
+	void cancel() {
+		cancelled = true;
+		resume();
+	}
+}